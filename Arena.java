@@ -0,0 +1,470 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays two engines against each other, many games at a time, in one JVM
+ *
+ * Each engine is loaded from its own classpath by its own class loader, so
+ * two versions of Player, GameState and Deadline can be compared. Each can
+ * also read its tablebase, book and network from its own directory, so two
+ * versions of those can be compared too. The arena
+ * is the referee: it keeps its own GameState of each game and only talks
+ * to the engines through toMessage() and GameState(String), which every
+ * version has. A move that isn't legal, or that comes back later than the
+ * deadline plus a grace period, loses the game.
+ *
+ * Games start from random openings of a few plies. Each opening is played
+ * twice, once with each engine as red, so that neither gets the better
+ * side of it. The results are counted from the first engine's point of
+ * view, and the arena can stop early with a sequential probability ratio
+ * test (SPRT) between two Elo differences.
+ *
+ * Usage:
+ *   java Arena <classpath 1> <classpath 2> [games <n>] [threads <n>] [time <ms>]
+ *       [hash <MB>] [data1 <dir>] [data2 <dir>] [openings <plies>] [seed <n>]
+ *       [sprt <elo0> <elo1>] [alpha <a>] [beta <b>]
+ *
+ * - games is rounded up to an even number (default 100)
+ * - threads is the number of games played at once (default: one per core).
+ *   Each engine runs single threaded, with one Player per game thread.
+ * - time is the thinking time per move (default 100 ms)
+ * - hash is the size of each Player's transposition table (default 16 MB).
+ *   There are two Players per game thread, so the heap needs at least
+ *   2 * threads * hash MB, e.g. -Xmx2g for 32 threads. Players too old to
+ *   take a size use their own default.
+ * - data1 and data2 are the directories where the first and second engine
+ *   find endgame.tb, opening.book and eval.nnue. By default both engines
+ *   share the files of the working directory. An engine too old to take a
+ *   directory can't be given one. A book takes over from the random
+ *   openings as long as it knows the position, so leave it out to play
+ *   from varied openings.
+ * - openings is the number of random plies before the engines take over (default 4)
+ * - sprt stops as soon as the test accepts elo0 or elo1, with error rates
+ *   alpha and beta (default 0.05)
+ */
+public class Arena {
+	/**
+	 * How late a move may be before it loses on time
+	 */
+	private static final long cGraceMillis = 50;
+
+	/**
+	 * Default size of each Player's transposition table. Player's own
+	 * default is meant for one Player per JVM.
+	 */
+	private static final int cTableMB = 16;
+
+	/**
+	 * Result of a game for the first engine
+	 */
+	private static final int cLoss = 0;
+	private static final int cDraw = 1;
+	private static final int cWin = 2;
+
+	private final Engine[] mEngines;
+	private final long mTime;
+	private final int mOpeningPlies;
+	private final long mSeed;
+	private final AtomicBoolean mStopped = new AtomicBoolean();
+
+	/**
+	 * One engine, loaded from its classpath
+	 *
+	 * Player isn't thread-safe, so every game thread gets its own Player.
+	 */
+	private static class Engine {
+		private final String mName;
+		private final Constructor<?> mState;		// GameState(String)
+		private final Method mToMessage;			// GameState.toMessage()
+		private final Constructor<?> mDeadline;	// Deadline(Date)
+		private final Method mPlay;				// Player.play(GameState, Deadline)
+		private final ThreadLocal<Object> mPlayer;
+
+		/**
+		 * @param pClasspath where the engine's classes are
+		 * @param pTableMB the size of the transposition table of its Players
+		 * @param pDirectory where its Players find their files, or null for
+		 *   the working directory
+		 */
+		Engine(String pClasspath, final int pTableMB, final File pDirectory)
+				throws ReflectiveOperationException, IOException {
+			this.mName = pClasspath;
+
+			String[] lPaths = pClasspath.split(File.pathSeparator);
+			URL[] lUrls = new URL[lPaths.length];
+			for (int i = 0; i < lPaths.length; i++) {
+				lUrls[i] = new File(lPaths[i]).toURI().toURL();
+			} // End for
+
+			// Not delegating to our own loader keeps the engine's classes apart
+			ClassLoader lLoader = new URLClassLoader(lUrls, ClassLoader.getPlatformClassLoader());
+			Class<?> lStateClass = lLoader.loadClass("GameState");
+			Class<?> lDeadlineClass = lLoader.loadClass("Deadline");
+			Class<?> lPlayerClass = lLoader.loadClass("Player");
+
+			this.mState = lStateClass.getDeclaredConstructor(String.class);
+			this.mToMessage = lStateClass.getDeclaredMethod("toMessage");
+			this.mDeadline = lDeadlineClass.getDeclaredConstructor(Date.class);
+			this.mPlay = lPlayerClass.getDeclaredMethod("play", lStateClass, lDeadlineClass);
+			this.mState.setAccessible(true);
+			this.mToMessage.setAccessible(true);
+			this.mDeadline.setAccessible(true);
+			this.mPlay.setAccessible(true);
+
+			// Older players have no directory, no table size, or not even a
+			// thread count and are single threaded anyway
+			Constructor<?> lFound = null;
+			Class<?>[][] lSignatures = { { int.class, int.class, File.class },
+					{ int.class, int.class }, { int.class }, {} };
+			for (int i = 0; lFound == null; i++) {
+				try {
+					lFound = lPlayerClass.getDeclaredConstructor(lSignatures[i]);
+				} catch (NoSuchMethodException e) {
+					// The directory can't be left out
+					if (pDirectory != null) {
+						throw new NoSuchMethodException(pClasspath + " is too old to be given a directory");
+					} else if (i + 1 == lSignatures.length) {
+						throw e;
+					} // End if
+				} // End catch
+			} // End for
+			final Constructor<?> lPlayer = lFound;
+			lPlayer.setAccessible(true);
+			final int lParameters = lPlayer.getParameterCount();
+
+			this.mPlayer = new ThreadLocal<Object>() {
+				@Override
+				protected Object initialValue() {
+					try {
+						return (lParameters == 3) ? lPlayer.newInstance(1, pTableMB, pDirectory)
+								: (lParameters == 2) ? lPlayer.newInstance(1, pTableMB)
+								: (lParameters == 1) ? lPlayer.newInstance(1) : lPlayer.newInstance();
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException("Cannot create Player of " + Engine.this.mName, e);
+					} // End catch
+				} // End initialValue
+			};
+		} // End constructor Engine
+
+		/**
+		 * Asks the engine for its move
+		 *
+		 * @param pMessage the message of the current state
+		 * @param pDeadline when the move is due
+		 * @return the message of the state after the engine's move
+		 */
+		String play(String pMessage, Date pDeadline) throws ReflectiveOperationException {
+			Object lState = this.mState.newInstance(pMessage);
+			Object lDeadline = this.mDeadline.newInstance(pDeadline);
+			Object lNext = this.mPlay.invoke(this.mPlayer.get(), lState, lDeadline);
+			return (String) this.mToMessage.invoke(lNext);
+		} // End play
+	} // End class Engine
+
+	/**
+	 * @param pEngines the two engines
+	 * @param pTime the thinking time per move in milliseconds
+	 * @param pOpeningPlies the number of random plies each game starts with
+	 * @param pSeed the seed of the openings
+	 */
+	Arena(Engine[] pEngines, long pTime, int pOpeningPlies, long pSeed) {
+		this.mEngines = pEngines;
+		this.mTime = pTime;
+		this.mOpeningPlies = pOpeningPlies;
+		this.mSeed = pSeed;
+	} // End constructor Arena
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: java Arena <classpath 1> <classpath 2> [games <n>] [threads <n>]"
+					+ " [time <ms>] [hash <MB>] [data1 <dir>] [data2 <dir>] [openings <plies>] [seed <n>]"
+					+ " [sprt <elo0> <elo1>] [alpha <a>] [beta <b>]");
+			System.err.println("Both engines read endgame.tb, opening.book and eval.nnue from the"
+					+ " working directory, unless data1 and data2 give each its own.");
+			return;
+		} // End if
+
+		// Parse parameters
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long time = 100;
+		int hash = cTableMB;
+		File[] data = new File[2];
+		int openings = 4;
+		long seed = System.nanoTime();
+		boolean sprt = false;
+		double elo0 = 0;
+		double elo1 = 0;
+		double alpha = 0.05;
+		double beta = 0.05;
+
+		for (int i = 2; i < args.length; ++i) {
+			String param = args[i];
+
+			if (param.equals("games") && i + 1 < args.length) {
+				games = Integer.parseInt(args[++i]);
+			} else if ((param.equals("threads") || param.equals("t")) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (param.equals("time") && i + 1 < args.length) {
+				time = Long.parseLong(args[++i]);
+			} else if (param.equals("hash") && i + 1 < args.length) {
+				hash = Integer.parseInt(args[++i]);
+			} else if (param.equals("data1") && i + 1 < args.length) {
+				data[0] = new File(args[++i]);
+			} else if (param.equals("data2") && i + 1 < args.length) {
+				data[1] = new File(args[++i]);
+			} else if (param.equals("openings") && i + 1 < args.length) {
+				openings = Integer.parseInt(args[++i]);
+			} else if (param.equals("seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (param.equals("sprt") && i + 2 < args.length) {
+				sprt = true;
+				elo0 = Double.parseDouble(args[++i]);
+				elo1 = Double.parseDouble(args[++i]);
+			} else if (param.equals("alpha") && i + 1 < args.length) {
+				alpha = Double.parseDouble(args[++i]);
+			} else if (param.equals("beta") && i + 1 < args.length) {
+				beta = Double.parseDouble(args[++i]);
+			} else {
+				System.err.println("Unknown parameter: '" + args[i] + "'");
+				return;
+			}
+		}
+
+		for (File directory : data) {
+			if (directory != null && !directory.isDirectory()) {
+				System.err.println("Not a directory: '" + directory + "'");
+				return;
+			} // End if
+		} // End for
+
+		Engine[] engines = new Engine[2];
+		try {
+			engines[0] = new Engine(args[0], hash, data[0]);
+			engines[1] = new Engine(args[1], hash, data[1]);
+		} catch (NoSuchMethodException e) {
+			System.err.println(e.getMessage());
+			return;
+		} // End catch
+		final Arena arena = new Arena(engines, time, openings, seed);
+		int pairs = (games + 1) / 2;
+
+		// Results of the first engine
+		int[] results = new int[3];
+		double llr = 0;
+		double lower = Math.log(beta / (1 - alpha));
+		double upper = Math.log((1 - beta) / alpha);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Integer> done = new ExecutorCompletionService<Integer>(pool);
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < 2 * pairs; i++) {
+				final int game = i;
+				done.submit(new Callable<Integer>() {
+					public Integer call() throws ReflectiveOperationException {
+						return arena.play(game);
+					} // End call
+				});
+			} // End for
+
+			for (int i = 0; i < 2 * pairs; i++) {
+				Integer result = done.take().get();
+				if (result == null) {
+					continue;
+				} // End if
+				results[result]++;
+
+				if (sprt) {
+					llr = Arena.llr(results, elo0, elo1);
+					if (llr <= lower || llr >= upper) {
+						arena.mStopped.set(true);
+						break;
+					} // End if
+				} // End if
+			} // End for
+		} catch (ExecutionException e) {
+			arena.mStopped.set(true);
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		} // End finally
+
+		int played = results[cWin] + results[cDraw] + results[cLoss];
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(engines[0].mName + " vs " + engines[1].mName + ": +" + results[cWin]
+				+ " =" + results[cDraw] + " -" + results[cLoss] + " in " + played + " games ("
+				+ String.format("%.0f", played * 3600 / seconds) + " games per hour)");
+		System.out.println(String.format("Elo difference: %.1f +/- %.1f", Arena.elo(results),
+				Arena.eloMargin(results)));
+		if (sprt) {
+			String verdict = (llr >= upper) ? "H1 accepted" : (llr <= lower) ? "H0 accepted" : "inconclusive";
+			System.out.println(String.format("SPRT [%.1f, %.1f]: LLR %.2f (%.2f, %.2f), %s",
+					elo0, elo1, llr, lower, upper, verdict));
+		} // End if
+	} // End main
+
+	/**
+	 * Plays one game. Game 2n and game 2n+1 start from the same opening,
+	 * with the engines swapping colours.
+	 *
+	 * @param pGame the number of the game
+	 * @return the result for the first engine, or null if the arena was
+	 *   stopped before the game started
+	 */
+	Integer play(int pGame) throws ReflectiveOperationException {
+		if (this.mStopped.get()) {
+			return null;
+		} // End if
+
+		// The opening, from a seed shared by both games of a pair
+		Random lRandom = new Random(this.mSeed + pGame / 2);
+		long[] lMoves = new long[GameState.cMaxMoves];
+		GameState lState = new GameState();
+		for (int i = 0; i < this.mOpeningPlies && !lState.isEOG(); i++) {
+			int lCount = lState.findPossibleMoves(lMoves);
+			lState = new GameState(lState, lMoves[lRandom.nextInt(lCount)]);
+		} // End for
+
+		// The first engine is red in even games
+		int lFirst = (pGame % 2 == 0) ? Constants.CELL_RED : Constants.CELL_WHITE;
+
+		while (!lState.isEOG()) {
+			if (this.mStopped.get()) {
+				return null;
+			} // End if
+			int lPlayer = lState.getNextPlayer();
+			Engine lEngine = this.mEngines[(lPlayer == lFirst) ? 0 : 1];
+
+			// Creating a Player allocates its tables, which isn't thinking time
+			lEngine.mPlayer.get();
+			long lStart = System.nanoTime();
+			String lReply;
+			try {
+				lReply = lEngine.play(lState.toMessage(), new Date(System.currentTimeMillis() + this.mTime));
+			} catch (java.lang.reflect.InvocationTargetException e) {
+				System.err.println("Game " + pGame + ": " + lEngine.mName + " failed: " + e.getCause());
+				return (lPlayer == lFirst) ? cLoss : cWin;
+			} // End catch
+			long lElapsed = (System.nanoTime() - lStart) / 1000000;
+
+			GameState lNext = Arena.follow(lState, lReply, lMoves);
+			if (lNext == null) {
+				System.err.println("Game " + pGame + ": " + lEngine.mName + " made an illegal move: '"
+						+ lReply + "' after '" + lState.toMessage() + "'");
+				return (lPlayer == lFirst) ? cLoss : cWin;
+			} // End if
+			if (lElapsed > this.mTime + cGraceMillis) {
+				System.err.println("Game " + pGame + ": " + lEngine.mName + " lost on time (" + lElapsed + " ms)");
+				return (lPlayer == lFirst) ? cLoss : cWin;
+			} // End if
+			lState = lNext;
+		} // End while
+
+		if (lState.isRedWin()) {
+			return (lFirst == Constants.CELL_RED) ? cWin : cLoss;
+		} else if (lState.isWhiteWin()) {
+			return (lFirst == Constants.CELL_WHITE) ? cWin : cLoss;
+		} // End else
+		return cDraw;
+	} // End play
+
+	/**
+	 * @param pState the state before the move
+	 * @param pReply the message sent back by an engine
+	 * @param pMoves a buffer for the legal moves
+	 * @return the state after the move, or null if pReply isn't the result
+	 *   of a legal move on pState
+	 */
+	private static GameState follow(GameState pState, String pReply, long[] pMoves) {
+		int lCount = pState.findPossibleMoves(pMoves);
+		for (int i = 0; i < lCount; i++) {
+			GameState lNext = new GameState(pState, pMoves[i]);
+			if (lNext.toMessage().equals(pReply)) {
+				return lNext;
+			} // End if
+		} // End for
+		return null;
+	} // End follow
+
+	/**
+	 * @return the expected score of a player pElo points stronger
+	 */
+	private static double score(double pElo) {
+		return 1 / (1 + Math.pow(10, -pElo / 400));
+	} // End score
+
+	/**
+	 * @return the Elo difference of a player with expected score pScore
+	 */
+	private static double elo(double pScore) {
+		return -400 * Math.log10(1 / pScore - 1);
+	} // End elo
+
+	/**
+	 * @return the mean and the variance of the score per game
+	 */
+	private static double[] meanAndVariance(int[] pResults) {
+		double lGames = pResults[cWin] + pResults[cDraw] + pResults[cLoss];
+		double lWin = pResults[cWin] / lGames;
+		double lDraw = pResults[cDraw] / lGames;
+		double lLoss = pResults[cLoss] / lGames;
+		double lMean = lWin + lDraw / 2;
+		double lVariance = lWin * (1 - lMean) * (1 - lMean) + lDraw * (0.5 - lMean) * (0.5 - lMean)
+				+ lLoss * lMean * lMean;
+		return new double[] { lMean, lVariance };
+	} // End meanAndVariance
+
+	/**
+	 * @return the Elo difference measured by pResults
+	 */
+	private static double elo(int[] pResults) {
+		double lMean = Arena.meanAndVariance(pResults)[0];
+		return Arena.elo(Math.min(Math.max(lMean, 1e-3), 1 - 1e-3));
+	} // End elo
+
+	/**
+	 * @return the half width of the 95% confidence interval of elo(pResults)
+	 */
+	private static double eloMargin(int[] pResults) {
+		double[] lStats = Arena.meanAndVariance(pResults);
+		double lGames = pResults[cWin] + pResults[cDraw] + pResults[cLoss];
+		double lMargin = 1.96 * Math.sqrt(lStats[1] / lGames);
+		double lHigh = Math.min(lStats[0] + lMargin, 1 - 1e-3);
+		double lLow = Math.max(lStats[0] - lMargin, 1e-3);
+		return (Arena.elo(lHigh) - Arena.elo(lLow)) / 2;
+	} // End eloMargin
+
+	/**
+	 * The log-likelihood ratio of an Elo difference of pElo1 against one of
+	 * pElo0, in the normal approximation of the score
+	 *
+	 * @return the log-likelihood ratio, 0 while it can't be computed yet
+	 */
+	static double llr(int[] pResults, double pElo0, double pElo1) {
+		double[] lStats = Arena.meanAndVariance(pResults);
+		double lGames = pResults[cWin] + pResults[cDraw] + pResults[cLoss];
+		if (lStats[1] <= 0) {
+			return 0;
+		} // End if
+		double lScore0 = Arena.score(pElo0);
+		double lScore1 = Arena.score(pElo1);
+		return lGames * (lScore1 - lScore0) * (2 * lStats[0] - lScore0 - lScore1) / (2 * lStats[1]);
+	} // End llr
+} // End class Arena
@@ -0,0 +1,250 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Builds the opening book read by OpeningBook
+ *
+ * The moves of the first plies of a set of games are collected, each one
+ * weighted by the result of its game for the player who made it (2 points
+ * for a win, 1 for a draw), and written sorted by position key.
+ *
+ * The games either come from a file or are played by Player against
+ * itself. In self-play, each of the first few plies is a random move with
+ * probability 1/2, so that the games don't all repeat the same line. Random
+ * moves that turn out badly collect few points. The other moves are
+ * searched by a Player without an opening book, so that rebuilding a book
+ * measures its lines instead of replaying them.
+ *
+ * Usage:
+ *   java BookBuilder selfplay <games> [plies <n>] [random <n>] [time <ms>] [seed <n>] [out <file>]
+ *   java BookBuilder import <file> [plies <n>] [out <file>]
+ *
+ * - plies is the number of plies of each game that go into the book (default 16)
+ * - random is the number of plies in which random moves may be played (default 6)
+ * - time is the thinking time per move in self-play (default 100 ms)
+ * - imported files hold the states of games in order, one toMessage() per
+ *   line. A state that doesn't follow from the line before starts a new game.
+ * - the default output file is opening.book, which is where Player looks for it
+ */
+public class BookBuilder {
+	private static final int cWinPoints = 2;
+	private static final int cDrawPoints = 1;
+
+	/**
+	 * Points of every (canonical position key, move) seen, sorted for
+	 * writing. Moves of mirrored positions are stored reversed.
+	 */
+	private final TreeMap<Long, TreeMap<Long, Integer>> mEntries = new TreeMap<Long, TreeMap<Long, Integer>>();
+	private final int mPlies;
+
+	/**
+	 * @param pPlies the number of plies of each game that go into the book
+	 */
+	BookBuilder(int pPlies) {
+		this.mPlies = pPlies;
+	} // End constructor BookBuilder
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || !(args[0].equals("selfplay") || args[0].equals("import"))) {
+			System.err.println("Usage: java BookBuilder selfplay <games> [plies <n>] [random <n>]"
+					+ " [time <ms>] [seed <n>] [out <file>]");
+			System.err.println("       java BookBuilder import <file> [plies <n>] [out <file>]");
+			return;
+		} // End if
+
+		// Parse parameters
+		int plies = 16;
+		int random = 6;
+		long time = 100;
+		long seed = System.nanoTime();
+		String out = Player.cBookFile;
+
+		for (int i = 2; i < args.length; ++i) {
+			String param = args[i];
+
+			if (param.equals("plies") && i + 1 < args.length) {
+				plies = Integer.parseInt(args[++i]);
+			} else if (param.equals("random") && i + 1 < args.length) {
+				random = Integer.parseInt(args[++i]);
+			} else if (param.equals("time") && i + 1 < args.length) {
+				time = Long.parseLong(args[++i]);
+			} else if (param.equals("seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (param.equals("out") && i + 1 < args.length) {
+				out = args[++i];
+			} else {
+				System.err.println("Unknown parameter: '" + args[i] + "'");
+				return;
+			}
+		}
+
+		BookBuilder builder = new BookBuilder(plies);
+		int games;
+		if (args[0].equals("selfplay")) {
+			games = Integer.parseInt(args[1]);
+			builder.selfPlay(games, random, time, new Random(seed));
+		} else {
+			games = builder.importGames(args[1]);
+		} // End else
+
+		int entries = builder.write(out);
+		System.err.println("Wrote " + entries + " moves of " + builder.mEntries.size()
+				+ " positions from " + games + " games to " + out);
+	} // End main
+
+	/**
+	 * Plays games of Player against itself and adds them to the book
+	 *
+	 * @param pGames the number of games
+	 * @param pRandomPlies the number of plies in which random moves may be played
+	 * @param pTime the thinking time per move in milliseconds
+	 */
+	void selfPlay(int pGames, int pRandomPlies, long pTime, Random pRandom) {
+		Player lPlayer = new Player(Runtime.getRuntime().availableProcessors(), Player.cTableMB, false);
+		long[] lMoves = new long[GameState.cMaxMoves];
+
+		for (int lGame = 0; lGame < pGames; lGame++) {
+			List<GameState> lStates = new ArrayList<GameState>();
+			GameState lState = new GameState();
+
+			while (!lState.isEOG()) {
+				lStates.add(lState);
+				int lCount = lState.findPossibleMoves(lMoves);
+				if (lStates.size() <= pRandomPlies && lCount > 1 && pRandom.nextBoolean()) {
+					lState = new GameState(lState, lMoves[pRandom.nextInt(lCount)]);
+				} else {
+					lState = lPlayer.play(lState, Deadline.fromNow(pTime));
+				} // End else
+			} // End while
+			lStates.add(lState);
+
+			this.addGame(lStates);
+			System.err.println("Game " + (lGame + 1) + ": " + (lStates.size() - 1) + " plies, "
+					+ (lState.isRedWin() ? "red wins" : lState.isWhiteWin() ? "white wins" : "draw"));
+		} // End for
+	} // End selfPlay
+
+	/**
+	 * Reads games from a file and adds them to the book
+	 *
+	 * @return the number of games read
+	 */
+	int importGames(String pFile) throws IOException {
+		int lGames = 0;
+		List<GameState> lStates = new ArrayList<GameState>();
+
+		try (BufferedReader lIn = new BufferedReader(new FileReader(pFile))) {
+			String lLine;
+			while ((lLine = lIn.readLine()) != null) {
+				if (lLine.trim().isEmpty()) {
+					continue;
+				} // End if
+				GameState lState = new GameState(lLine);
+
+				// Start a new game unless the last move leads here
+				if (!lStates.isEmpty() && !BookBuilder.follows(lStates.get(lStates.size() - 1), lState)) {
+					this.addGame(lStates);
+					lGames++;
+					lStates.clear();
+				} // End if
+				lStates.add(lState);
+			} // End while
+		} // End try
+
+		if (!lStates.isEmpty()) {
+			this.addGame(lStates);
+			lGames++;
+		} // End if
+		return lGames;
+	} // End importGames
+
+	/**
+	 * @return true if pNext is the result of its last move on pPrevious
+	 */
+	private static boolean follows(GameState pPrevious, GameState pNext) {
+		long[] lMoves = new long[GameState.cMaxMoves];
+		int lCount = pPrevious.findPossibleMoves(lMoves);
+		for (int i = 0; i < lCount; i++) {
+			if (lMoves[i] == pNext.getPackedMove()) {
+				return new GameState(pPrevious, lMoves[i]).equals(pNext);
+			} // End if
+		} // End for
+		return false;
+	} // End follows
+
+	/**
+	 * Adds the first mPlies moves of a game. A game that doesn't end counts
+	 * as a draw.
+	 *
+	 * @param pStates the states of the game in order
+	 */
+	void addGame(List<GameState> pStates) {
+		GameState lLast = pStates.get(pStates.size() - 1);
+		int lLength = Math.min(pStates.size() - 1, this.mPlies);
+
+		for (int i = 0; i < lLength; i++) {
+			GameState lState = pStates.get(i);
+			long lMove = pStates.get(i + 1).getPackedMove();
+			if (lState.isMirrored()) {
+				lMove = Move.reversed(lMove);
+			} // End if
+
+			int lPoints = cDrawPoints;
+			if (lLast.isRedWin()) {
+				lPoints = (lState.getNextPlayer() == Constants.CELL_RED) ? cWinPoints : 0;
+			} else if (lLast.isWhiteWin()) {
+				lPoints = (lState.getNextPlayer() == Constants.CELL_WHITE) ? cWinPoints : 0;
+			} // End else
+
+			TreeMap<Long, Integer> lMoves = this.mEntries.get(lState.getCanonicalKey());
+			if (lMoves == null) {
+				lMoves = new TreeMap<Long, Integer>();
+				this.mEntries.put(lState.getCanonicalKey(), lMoves);
+			} // End if
+			Integer lOld = lMoves.get(lMove);
+			lMoves.put(lMove, ((lOld == null) ? 0 : lOld) + lPoints);
+		} // End for
+	} // End addGame
+
+	/**
+	 * Writes the book in the format described in OpeningBook
+	 *
+	 * @return the number of entries written
+	 */
+	int write(String pFile) throws IOException {
+		int lCount = 0;
+		for (TreeMap<Long, Integer> lMoves : this.mEntries.values()) {
+			lCount += lMoves.size();
+		} // End for
+
+		try (DataOutputStream lOut = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(pFile), 1 << 16))) {
+			lOut.writeInt(OpeningBook.cMagic);
+			lOut.writeInt(OpeningBook.cVersion);
+			lOut.writeLong(new GameState().getKey());
+			lOut.writeInt(lCount);
+
+			for (Map.Entry<Long, TreeMap<Long, Integer>> lPosition : this.mEntries.entrySet()) {
+				for (Map.Entry<Long, Integer> lMove : lPosition.getValue().entrySet()) {
+					lOut.writeLong(lPosition.getKey());
+					lOut.writeLong(lMove.getKey());
+					lOut.writeInt(lMove.getValue());
+				} // End for
+			} // End for
+		} // End try
+		return lCount;
+	} // End write
+} // End class BookBuilder
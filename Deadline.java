@@ -1,14 +1,83 @@
 
 import java.util.Date;
 
+/**
+ * A time limit for a move
+ *
+ * Times are read from System.nanoTime(), which is monotonic and cheap, so
+ * the search can poll a deadline every few thousand nodes. A deadline has
+ * a hard limit, which must never be passed, and a soft limit at or before
+ * it, by which we would like to be done (see TimeManager).
+ */
 public class Deadline {
-	private Date mDate;
-	
+	private final long mSoft;	// System.nanoTime() of the soft limit
+	private final long mHard;	// System.nanoTime() of the hard limit
+
+	/**
+	 * @param pDate the hard limit, which is also the soft one
+	 */
 	public Deadline(Date pDate) {
-		mDate = pDate;
+		this(System.nanoTime() + (pDate.getTime() - System.currentTimeMillis()) * 1000000L);
+	} // End constructor Deadline
+
+	/**
+	 * @param pHard the System.nanoTime() of the hard limit, which is also
+	 *   the soft one
+	 */
+	Deadline(long pHard) {
+		this(pHard, pHard);
 	} // End constructor Deadline
 
+	/**
+	 * @param pSoft the System.nanoTime() of the soft limit
+	 * @param pHard the System.nanoTime() of the hard limit
+	 */
+	Deadline(long pSoft, long pHard) {
+		// nanoTime() values may wrap, so only their differences compare
+		this.mSoft = (pSoft - pHard < 0) ? pSoft : pHard;
+		this.mHard = pHard;
+	} // End constructor Deadline
+
+	/**
+	 * @return a deadline pMillis milliseconds from now
+	 */
+	public static Deadline fromNow(long pMillis) {
+		return new Deadline(System.nanoTime() + pMillis * 1000000L);
+	} // End fromNow
+
+	/**
+	 * @return the milliseconds left until the hard limit
+	 */
 	long timeUntil() {
-		return mDate.getTime() - (new Date()).getTime();
+		return this.nanosUntil() / 1000000;
 	} // End TimeUntil
-} // End class Deadline
\ No newline at end of file
+
+	/**
+	 * @return the nanoseconds left until the hard limit
+	 */
+	long nanosUntil() {
+		return this.mHard - System.nanoTime();
+	} // End nanosUntil
+
+	/**
+	 * @return the nanoseconds left until the soft limit
+	 */
+	long softNanosUntil() {
+		return this.mSoft - System.nanoTime();
+	} // End softNanosUntil
+
+	/**
+	 * @return the System.nanoTime() of the hard limit
+	 */
+	long getHard() {
+		return this.mHard;
+	} // End getHard
+
+	boolean isPastSoft() {
+		return System.nanoTime() - this.mSoft >= 0;
+	} // End isPastSoft
+
+	boolean isPastHard() {
+		return System.nanoTime() - this.mHard >= 0;
+	} // End isPastHard
+} // End class Deadline
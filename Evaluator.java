@@ -0,0 +1,145 @@
+/**
+ * The static evaluation used at the leaves of the search
+ *
+ * Most of the score is material and piece-square values, which GameState
+ * keeps as a running total (see GameState.getScore()): every piece added to
+ * or removed from the board adds or subtracts its entry of cPieceValues, in
+ * the same places where the Zobrist keys are updated. A leaf then only adds
+ * the terms that depend on several pieces at once, which are cheap bit
+ * operations:
+ * - back-rank guard: men left on their own back row keep the opponent's
+ *   men from promoting, as long as the opponent has men
+ * - mobility: the number of normal moves of each side
+ *
+ * Values are symmetric: a position and its reversed() score the same for
+ * the player to move.
+ */
+public class Evaluator {
+	static final int cManValue = 100;
+	static final int cKingValue = 150;
+	static final int cBackRankValue = 8;	// per man guarding the back row
+	static final int cMobilityValue = 2;	// per normal move
+
+	/**
+	 * Bonus of a man on each row, counted from its own back row. Men are
+	 * worth more the closer they get to promotion.
+	 */
+	private static final int[] cManRows = { 0, 2, 4, 6, 9, 13, 18, 0 };
+
+	/**
+	 * Kings are worth more in the centre, where they reach more squares
+	 */
+	private static final int[] cKingRows = { -6, 0, 4, 6, 6, 4, 0, -6 };
+
+	/**
+	 * Penalties of pieces on the left or right edge, which have half the moves
+	 */
+	private static final int cManEdge = 4;
+	private static final int cKingEdge = 10;
+
+	/**
+	 * The material and piece-square value of a piece, indexed like
+	 * GameState.cZobrist by (kind << 5) | square. Red pieces count positive
+	 * and white pieces negative.
+	 */
+	static final int[] cPieceValues = new int[4 * GameState.cSquares];
+
+	/**
+	 * A step in one direction adds one of two offsets to the square index,
+	 * depending on the row. For each direction, these are the two offsets
+	 * and the squares with a neighbour at each of them.
+	 */
+	private static final int[][] cStepMasks = new int[GameState.cDirections][2];
+	private static final int[][] cStepShifts = new int[GameState.cDirections][2];
+
+	static {
+		for (int lSquare = 0; lSquare < GameState.cSquares; lSquare++) {
+			int lRow = lSquare / 4;
+			int lBase = lSquare * GameState.cDirections;
+			boolean lEdge = (GameState.cNeighbour[lBase + GameState.cDownLeft]
+					| GameState.cNeighbour[lBase + GameState.cUpLeft]) == 0
+					|| (GameState.cNeighbour[lBase + GameState.cDownRight]
+					| GameState.cNeighbour[lBase + GameState.cUpRight]) == 0;
+			int lRedMan = cManValue + cManRows[lRow] - (lEdge ? cManEdge : 0);
+			int lKing = cKingValue + cKingRows[lRow] - (lEdge ? cKingEdge : 0);
+
+			// A white piece on a square is a red one on the mirrored square
+			int lMirror = GameState.cSquares - 1 - lSquare;
+			cPieceValues[lSquare] += lRedMan;
+			cPieceValues[(1 << 5) | lMirror] -= lRedMan;
+			cPieceValues[(2 << 5) | lSquare] += lKing;
+			cPieceValues[(3 << 5) | lMirror] -= lKing;
+		} // End for
+
+		for (int d = 0; d < GameState.cDirections; d++) {
+			boolean lFirst = true;
+			for (int lSquare = 0; lSquare < GameState.cSquares; lSquare++) {
+				int lNeighbour = GameState.cNeighbour[lSquare * GameState.cDirections + d];
+				if (lNeighbour == 0) {
+					continue;
+				} // End if
+				int lShift = Integer.numberOfTrailingZeros(lNeighbour) - lSquare;
+				if (lFirst) {
+					cStepShifts[d][0] = lShift;
+					lFirst = false;
+				} // End if
+				int k = (lShift == cStepShifts[d][0]) ? 0 : 1;
+				cStepShifts[d][k] = lShift;
+				cStepMasks[d][k] |= 1 << lSquare;
+			} // End for
+		} // End for
+	} // End static
+
+	/**
+	 * @return the static score of pState for the player to move
+	 */
+	static int evaluate(GameState pState) {
+		int lRed = pState.getRed();
+		int lWhite = pState.getWhite();
+		int lKings = pState.getKings();
+		int lEmpty = ~(lRed | lWhite);
+		int lRedMen = lRed & ~lKings;
+		int lWhiteMen = lWhite & ~lKings;
+
+		int lScore = pState.getScore();
+
+		// Back-rank guard. Red's back row is where white promotes.
+		if (lWhiteMen != 0) {
+			lScore += cBackRankValue * Integer.bitCount(lRedMen & GameState.cWhiteKingRow);
+		} // End if
+		if (lRedMen != 0) {
+			lScore -= cBackRankValue * Integer.bitCount(lWhiteMen & GameState.cRedKingRow);
+		} // End if
+
+		// Mobility: red men move down, white men up, kings both ways
+		int lRedMoves = Evaluator.moves(lRed, GameState.cDownLeft, lEmpty)
+				+ Evaluator.moves(lRed, GameState.cDownRight, lEmpty)
+				+ Evaluator.moves(lRed & lKings, GameState.cUpLeft, lEmpty)
+				+ Evaluator.moves(lRed & lKings, GameState.cUpRight, lEmpty);
+		int lWhiteMoves = Evaluator.moves(lWhite, GameState.cUpLeft, lEmpty)
+				+ Evaluator.moves(lWhite, GameState.cUpRight, lEmpty)
+				+ Evaluator.moves(lWhite & lKings, GameState.cDownLeft, lEmpty)
+				+ Evaluator.moves(lWhite & lKings, GameState.cDownRight, lEmpty);
+		lScore += cMobilityValue * (lRedMoves - lWhiteMoves);
+
+		return (pState.getNextPlayer() == Constants.CELL_RED) ? lScore : -lScore;
+	} // End evaluate
+
+	/**
+	 * @return the number of pieces in pPieces that can step in direction
+	 *   pDirection to a square in pEmpty
+	 */
+	private static int moves(int pPieces, int pDirection, int pEmpty) {
+		int lTargets = Evaluator.shift(pPieces & cStepMasks[pDirection][0], cStepShifts[pDirection][0])
+				| Evaluator.shift(pPieces & cStepMasks[pDirection][1], cStepShifts[pDirection][1]);
+		return Integer.bitCount(lTargets & pEmpty);
+	} // End moves
+
+	/**
+	 * @return pBits shifted towards higher squares by pShift, or lower ones
+	 *   if pShift is negative
+	 */
+	private static int shift(int pBits, int pShift) {
+		return (pShift >= 0) ? pBits << pShift : pBits >>> -pShift;
+	} // End shift
+} // End class Evaluator
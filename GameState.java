@@ -1,5 +1,7 @@
 
 
+import java.util.Arrays;
+import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -45,33 +47,72 @@ public class GameState implements Cloneable {
 	public static final int cSquares = 32;			// 32 valid squares
 	public static final int cPlayerPieces = 12;	// 12 pieces per player
 	public static final int cMovesUntilDraw = 50;	// 25 moves per player
+	public static final int cMaxMoves = 128;		// size of a move buffer for one position
 
-	private int[] mCell = new int[GameState.cSquares];
+	/**
+	 * The board is kept as three bitboards. Bit i corresponds to cell i+1,
+	 * so cell 1 is bit 0 and cell 32 is bit 31.
+	 */
+	static final int cEvenRows    = 0x0F0F0F0F;	// rows 0, 2, 4, 6
+	static final int cOddRows     = 0xF0F0F0F0;	// rows 1, 3, 5, 7
+	static final int cLeftEdge    = 0x10101010;	// cells 5, 13, 21, 29 (col 0)
+	static final int cRightEdge   = 0x08080808;	// cells 4, 12, 20, 28 (col 7)
+	static final int cRedKingRow   = 0xF0000000;	// row 7, where red promotes
+	static final int cWhiteKingRow = 0x0000000F;	// row 0, where white promotes
+
+	private int mRed;		// squares holding a red piece
+	private int mWhite;		// squares holding a white piece
+	private int mKings;		// squares holding a king (subset of mRed | mWhite)
 	private int mMovesUntilDraw;
 	private int mNextPlayer;
-	private Move mLastMove;
+	private long mLastMove;	// packed, see Move.pack()
+	private long mKey;		// Zobrist key, see getKey()
+	private long mMirrorKey;	// key of reversed(), see getMirrorKey()
+	private int mScore;		// material and piece-square values, see getScore()
+
+	/**
+	 * Random numbers for the Zobrist key, one per square and kind of piece,
+	 * indexed by (kind << 5) | square, where kind is 0 for red men, 1 for
+	 * white men, 2 for red kings and 3 for white kings. cZobristWhite is
+	 * added when white is to move. The seed is fixed so keys can be stored.
+	 *
+	 * Rotating the board and swapping colours (see reversed()) turns the
+	 * piece of index i into the piece of index i ^ cMirrorIndex.
+	 */
+	static final long[] cZobrist = new long[4 * cSquares];
+	static final long cZobristWhite;
+	static final int cMirrorIndex = (1 << 5) | (cSquares - 1);
+
+	static {
+		Random lRandom = new Random(0x5EED_C4EC_E25L);
+		for (int i = 0; i < cZobrist.length; i++) {
+			cZobrist[i] = lRandom.nextLong();
+		} // End for
+		cZobristWhite = lRandom.nextLong();
+	} // End static
+
+	/**
+	 * What undoMove() needs to restore the state before each doMove(),
+	 * cHistoryStride longs per move. Allocated on the first doMove().
+	 */
+	private static final int cHistoryStride = 6;
+	private long[] mHistory;
+	private int mHistorySize;
 
 	/**
 	 * Initializes the board to the starting position
 	 */
 	public GameState() {
-		// Initialize the board
-		for(int i = 0; i < GameState.cPlayerPieces; i++) {
-			this.mCell[i] = Constants.CELL_RED;
-			this.mCell[cSquares-1-i] = Constants.CELL_WHITE;
-		} // End for
-		
-		for(int i = GameState.cPlayerPieces; 
-				i < GameState.cSquares - GameState.cPlayerPieces;
-				i++) {
-			
-			this.mCell[i] = Constants.CELL_EMPTY;
-		} // End for
+		// Initialize the board: red on the first 12 cells, white on the last 12
+		this.mRed = (1 << GameState.cPlayerPieces) - 1;
+		this.mWhite = this.mRed << (GameState.cSquares - GameState.cPlayerPieces);
+		this.mKings = 0;
 		
 		// Initialize move related variables
-		this.mLastMove = new Move(Move.MoveType.MOVE_BOG);
+		this.mLastMove = Move.packSpecial(Move.MoveType.MOVE_BOG.getInternalValue());
 		this.mMovesUntilDraw = GameState.cMovesUntilDraw;
 		this.mNextPlayer = Constants.CELL_RED;
+		this.computeKeys();
 	} // End constructor GameState
 
 	/**
@@ -100,23 +141,23 @@ public class GameState implements Cloneable {
 			
 			if (board.charAt(i) == Constants.MESSAGE_SYMBOLS[Constants.CELL_EMPTY]) {
 			
-				this.mCell[i] = Constants.CELL_EMPTY;
+				this.set(i + 1, Constants.CELL_EMPTY);
 			
 			} else if (board.charAt(i) == Constants.MESSAGE_SYMBOLS[Constants.CELL_RED]) {
 			
-				this.mCell[i] = Constants.CELL_RED;
+				this.set(i + 1, Constants.CELL_RED);
 			
 			} else if (board.charAt(i) == Constants.MESSAGE_SYMBOLS[Constants.CELL_WHITE]) {
 				
-				this.mCell[i] = Constants.CELL_WHITE;
+				this.set(i + 1, Constants.CELL_WHITE);
 			
 			} else if (board.charAt(i) == Constants.MESSAGE_SYMBOLS[Constants.CELL_RED | Constants.CELL_KING]) {
 				
-				this.mCell[i] = Constants.CELL_RED | Constants.CELL_KING;
+				this.set(i + 1, Constants.CELL_RED | Constants.CELL_KING);
 			
 			} else if (board.charAt(i) == Constants.MESSAGE_SYMBOLS[Constants.CELL_WHITE | Constants.CELL_KING]) {
 				
-				this.mCell[i] = Constants.CELL_WHITE | Constants.CELL_KING;
+				this.set(i + 1, Constants.CELL_WHITE | Constants.CELL_KING);
 			
 			} else {
 				// ???
@@ -125,7 +166,7 @@ public class GameState implements Cloneable {
 		} // End for
 
 		// Parse last move
-		this.mLastMove = new Move(last_move);
+		this.mLastMove = new Move(last_move).pack();
 
 		// Parse next player
 		if (next_player.charAt(0) == Constants.MESSAGE_SYMBOLS[Constants.CELL_EMPTY]) {
@@ -155,6 +196,26 @@ public class GameState implements Cloneable {
 		
 		// Set number of moves left until draw
 		this.mMovesUntilDraw = moves_left;
+
+		this.computeKeys();
+	} // End constructor GameState
+
+	/**
+	 * Constructs a copy of board \p pRH. The copy can't undo the moves that
+	 * led to \p pRH.
+	 *
+	 * @param pRH the board to copy
+	 */
+	public GameState(final GameState pRH) {
+	    this.mRed            = pRH.mRed;
+	    this.mWhite          = pRH.mWhite;
+	    this.mKings          = pRH.mKings;
+	    this.mMovesUntilDraw = pRH.mMovesUntilDraw;
+	    this.mNextPlayer     = pRH.mNextPlayer;
+	    this.mLastMove       = pRH.mLastMove;
+	    this.mKey            = pRH.mKey;
+	    this.mMirrorKey      = pRH.mMirrorKey;
+	    this.mScore          = pRH.mScore;
 	} // End constructor GameState
 
 	/**
@@ -165,46 +226,105 @@ public class GameState implements Cloneable {
 	 * @see DoMove()
 	 */
 	public GameState(final GameState pRH, final Move pMove) {
+		this(pRH, pMove.pack());
+	} // End constructor GameState
+
+	/**
+	 * Same as above, for a move in the packed form written by findPossibleMoves(long[])
+	 */
+	public GameState(final GameState pRH, long pMove) {
+		if (SearchMetrics.cEnabled) {
+			SearchMetrics.cSuccessors.increment();
+		} // End if
+
 		// Copy board
-	    //memcpy(mCell, pRH.mCell, sizeof(mCell));
-	    this.mCell = pRH.mCell.clone();
+	    this.mRed   = pRH.mRed;
+	    this.mWhite = pRH.mWhite;
+	    this.mKings = pRH.mKings;
 	    
 	    // Copy move status
 	    this.mMovesUntilDraw = pRH.mMovesUntilDraw;
 	    this.mNextPlayer     = pRH.mNextPlayer;
 	    this.mLastMove       = pRH.mLastMove;
+	    this.mKey            = pRH.mKey;
+	    this.mMirrorKey      = pRH.mMirrorKey;
+	    this.mScore          = pRH.mScore;
 
 	    // Perform move
-	    this.doMove(pMove);
+	    this.applyMove(pMove);
 	} // End constructor GameState
 	
+	/**
+	 * Sets up an arbitrary position, with a full draw counter and no moves
+	 * to undo. Used to walk positions that don't come from a game, like
+	 * those of the endgame tablebase.
+	 *
+	 * @param pRed the red pieces (bit i is cell i+1)
+	 * @param pWhite the white pieces, disjoint from pRed
+	 * @param pKings the kings of either colour, a subset of the pieces
+	 * @param pNextPlayer CELL_RED or CELL_WHITE
+	 */
+	void setPosition(int pRed, int pWhite, int pKings, int pNextPlayer) {
+		this.setState(pRed, pWhite, pKings, pNextPlayer,
+				Move.packSpecial(Move.MoveType.MOVE_BOG.getInternalValue()), GameState.cMovesUntilDraw);
+	} // End setPosition
+
+	/**
+	 * Same as above, also setting the last move and the draw counter. Used
+	 * to decode messages into an existing state (see MessageCodec).
+	 *
+	 * @param pLastMove the last move in packed form
+	 * @param pMovesUntilDraw the value of the draw counter
+	 */
+	void setState(int pRed, int pWhite, int pKings, int pNextPlayer, long pLastMove, int pMovesUntilDraw) {
+		assert((pRed & pWhite) == 0);
+		assert((pKings & ~(pRed | pWhite)) == 0);
+
+		this.mRed = pRed;
+		this.mWhite = pWhite;
+		this.mKings = pKings;
+		this.mNextPlayer = pNextPlayer;
+		this.mMovesUntilDraw = pMovesUntilDraw;
+		this.mLastMove = pLastMove;
+		this.computeKeys();
+		this.mHistorySize = 0;
+	} // End setState
+
 	/**
 	 * Constructs a state that is the result of rotating the board 180 degrees and swapping colors
 	 *
+	 * This state is left unchanged. The new state can't undo the moves that
+	 * led to this one, since they were made on the other board.
 	 */
 	GameState reversed() {
-	
-		GameState result;
-		try {
-			result = (GameState) this.clone();
-			for (int i = 0; i < 32; i++) {
-				if (this.mCell[31-i] == Constants.CELL_EMPTY) {
-					result.mCell[i] = Constants.CELL_EMPTY;
-				} else {
-					result.mCell[i] 
-						= mCell[31-i] ^ (Constants.CELL_RED | Constants.CELL_WHITE);
-				} // End else
-			} // End for
-	    
-			result.mNextPlayer ^= (Constants.CELL_RED | Constants.CELL_WHITE);
-			result.mLastMove = mLastMove.reversed();
-			return result;
-		} catch (CloneNotSupportedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return null;
+		GameState result = new GameState(this);
+
+		// Rotating the board maps cell i to cell 33-i, i.e. reverses the bits
+		result.mRed   = Integer.reverse(this.mWhite);
+		result.mWhite = Integer.reverse(this.mRed);
+		result.mKings = Integer.reverse(this.mKings);
+
+		result.mNextPlayer ^= (Constants.CELL_RED | Constants.CELL_WHITE);
+		result.mLastMove = Move.reversed(this.mLastMove);
+
+		// Each key is the other's mirror, and the score is symmetric
+		result.mKey = this.mMirrorKey;
+		result.mMirrorKey = this.mKey;
+		result.mScore = -this.mScore;
+		return result;
 	} // End Reversed
+
+	/**
+	 * The copy can undo the same moves as this state
+	 */
+	@Override
+	protected Object clone() throws CloneNotSupportedException {
+		GameState lResult = (GameState) super.clone();
+		if (this.mHistory != null) {
+			lResult.mHistory = this.mHistory.clone();
+		} // End if
+		return lResult;
+	} // End clone
 	
 	/**
 	 *@Return the content of a cell in the board.
@@ -227,7 +347,10 @@ public class GameState implements Cloneable {
 	int get(int pPos) {
 		assert(pPos > 0);
 		assert(pPos <= cSquares);
-		return mCell[pPos - 1];
+		int lShift = pPos - 1;
+		return ((this.mRed >>> lShift) & 1) * Constants.CELL_RED
+			| ((this.mWhite >>> lShift) & 1) * Constants.CELL_WHITE
+			| ((this.mKings >>> lShift) & 1) * Constants.CELL_KING;
 	} // End get
 
 	/**
@@ -236,9 +359,45 @@ public class GameState implements Cloneable {
 	void set(int pPos, int v) {
 		assert(pPos > 0);
 		assert(pPos <= cSquares);
-		mCell[pPos - 1] = v;
+		int lBit = 1 << (pPos - 1);
+		this.togglePiece(pPos - 1, -1);
+		this.mRed   = (this.mRed   & ~lBit) | (0 != (v & Constants.CELL_RED)   ? lBit : 0);
+		this.mWhite = (this.mWhite & ~lBit) | (0 != (v & Constants.CELL_WHITE) ? lBit : 0);
+		this.mKings = (this.mKings & ~lBit) | (0 != (v & Constants.CELL_KING)  ? lBit : 0);
+		this.togglePiece(pPos - 1, 1);
 	} // End set
 
+	/**
+	 * Adds the piece on pSquare to the keys and the score, or removes it.
+	 * Does nothing if the square is empty.
+	 *
+	 * @param pSquare a square index (cell - 1)
+	 * @param pSign 1 when the piece has been put on the square, -1 when it
+	 *   is about to leave it
+	 */
+	private void togglePiece(int pSquare, int pSign) {
+		if (0 == ((this.mRed | this.mWhite) & (1 << pSquare))) {
+			return;
+		} // End if
+		int lKind = ((this.mWhite >>> pSquare) & 1) | (((this.mKings >>> pSquare) & 1) << 1);
+		int lIndex = (lKind << 5) | pSquare;
+		this.mKey ^= cZobrist[lIndex];
+		this.mMirrorKey ^= cZobrist[lIndex ^ cMirrorIndex];
+		this.mScore += pSign * Evaluator.cPieceValues[lIndex];
+	} // End togglePiece
+
+	/**
+	 * Computes the keys and the score of the state from scratch
+	 */
+	private void computeKeys() {
+		this.mKey = (this.mNextPlayer == Constants.CELL_WHITE) ? cZobristWhite : 0;
+		this.mMirrorKey = (this.mNextPlayer == Constants.CELL_WHITE) ? 0 : cZobristWhite;
+		this.mScore = 0;
+		for (int lLeft = this.mRed | this.mWhite; lLeft != 0; lLeft &= lLeft - 1) {
+			this.togglePiece(Integer.numberOfTrailingZeros(lLeft), 1);
+		} // End for
+	} // End computeKeys
+
 	/**
 	 * @return the content of a cell in the board.
 	 *
@@ -263,19 +422,9 @@ public class GameState implements Cloneable {
 			return Constants.CELL_INVALID;
 		} // End if
 		
-		return this.mCell[pR * 4 + (pC >> 1)];
+		return this.get(GameState.rowColToCell(pR, pC));
 	} // End get
 
-	/**
-	 * private version of above function (allows modifying cells)
-	 */
-	private void set(int pR, int pC, int v) {
-		//this is a bit ugly, but is useful for the implementation of
-		//FindPossibleMoves. It won't affect in single-threaded programs
-		//and you're not allowed to use threads anyway
-		this.mCell[pR * 4 + (pC >> 1)] = v;
-	} // End MutableAt
-
 
 	/**
 	 * @param pCell
@@ -314,201 +463,344 @@ public class GameState implements Cloneable {
 		return (pRow * 4 + (pCol >> 1)) + 1;
 	} // End RowColToCell
 
-	private boolean tryJump(Vector<Move> pMoves, int pR, int pC, boolean pKing,
-			int[] pBuffer) {
-		return this.tryJump(pMoves, pR, pC, pKing, pBuffer, 0);
-	} // End TryJump
+	/**
+	 * The following functions shift every square of a bitboard one step
+	 * diagonally. Squares that would fall off the board disappear.
+	 * "Down" is towards row 7 (the direction red moves in).
+	 *
+	 * @param pBits a set of squares
+	 * @return the set of squares one step away in the given direction
+	 */
+	static int downLeft(int pBits) {
+		return ((pBits & cEvenRows) << 4) | ((pBits & cOddRows & ~cLeftEdge) << 3);
+	} // End downLeft
+
+	static int downRight(int pBits) {
+		return ((pBits & cEvenRows & ~cRightEdge) << 5) | ((pBits & cOddRows) << 4);
+	} // End downRight
+
+	static int upLeft(int pBits) {
+		return ((pBits & cEvenRows) >>> 4) | ((pBits & cOddRows & ~cLeftEdge) >>> 5);
+	} // End upLeft
+
+	static int upRight(int pBits) {
+		return ((pBits & cEvenRows & ~cRightEdge) >>> 3) | ((pBits & cOddRows) >>> 4);
+	} // End upRight
+
+	/**
+	 * Directions, in the order moves are generated. Red men use the first
+	 * two, white men the last two and kings all of them.
+	 */
+	static final int cDownLeft  = 0;
+	static final int cDownRight = 1;
+	static final int cUpLeft    = 2;
+	static final int cUpRight   = 3;
+	static final int cDirections = 4;
+
+	/**
+	 * Lookup tables indexed by (square index) * cDirections + direction.
+	 * cNeighbour holds the bit of the diagonal neighbour and cJumpLanding
+	 * the bit of the square two steps away. Off-board squares are 0, so they
+	 * never match a piece or an empty square and need no special handling.
+	 */
+	static final int[] cNeighbour = new int[cSquares * cDirections];
+	static final int[] cJumpLanding = new int[cSquares * cDirections];
+
+	/**
+	 * The index of the square jumped over, indexed by (from << 5) | to
+	 */
+	static final byte[] cJumped = new byte[cSquares * cSquares];
+
+	static {
+		for (int i = 0; i < cSquares; i++) {
+			int lBit = 1 << i;
+			int[] lSteps = { downLeft(lBit), downRight(lBit), upLeft(lBit), upRight(lBit) };
+			for (int d = 0; d < cDirections; d++) {
+				cNeighbour[i * cDirections + d] = lSteps[d];
+			} // End for
+		} // End for
+
+		for (int i = 0; i < cSquares; i++) {
+			for (int d = 0; d < cDirections; d++) {
+				int lOver = cNeighbour[i * cDirections + d];
+				if (lOver != 0) {
+					int lLanding = cNeighbour[Integer.numberOfTrailingZeros(lOver) * cDirections + d];
+					cJumpLanding[i * cDirections + d] = lLanding;
+					if (lLanding != 0) {
+						cJumped[(i << 5) | Integer.numberOfTrailingZeros(lLanding)]
+								= (byte) Integer.numberOfTrailingZeros(lOver);
+					} // End if
+				} // End if
+			} // End for
+		} // End for
+	} // End static
+
+	/**
+	 * @return the bitboard of all pieces belonging to pPlayer
+	 */
+	private int pieces(int pPlayer) {
+		return (pPlayer == Constants.CELL_RED) ? this.mRed : this.mWhite;
+	} // End pieces
+
+	/**
+	 * Checks, for the whole board at once, if the player to move has any jump
+	 *
+	 * @return true if at least one piece of the player to move can capture
+	 */
+	private boolean canJump() {
+		int lOwn = this.pieces(mNextPlayer);
+		int lOther = this.pieces(mNextPlayer ^ (Constants.CELL_RED | Constants.CELL_WHITE));
+		int lEmpty = ~(this.mRed | this.mWhite);
+		int lDown = (mNextPlayer == Constants.CELL_RED) ? lOwn : (lOwn & this.mKings);
+		int lUp = (mNextPlayer == Constants.CELL_WHITE) ? lOwn : (lOwn & this.mKings);
+
+		int lLanding = downLeft(downLeft(lDown) & lOther)
+				| downRight(downRight(lDown) & lOther)
+				| upLeft(upLeft(lUp) & lOther)
+				| upRight(upRight(lUp) & lOther);
+		return 0 != (lLanding & lEmpty);
+	} // End canJump
+
+	/**
+	 * Checks, for the whole board at once, if the player to move has a
+	 * normal move. A player with neither jumps nor normal moves has lost.
+	 *
+	 * @return true if at least one piece of the player to move can step
+	 *   to an empty square
+	 */
+	boolean canStep() {
+		int lOwn = this.pieces(mNextPlayer);
+		int lEmpty = ~(this.mRed | this.mWhite);
+		int lDown = (mNextPlayer == Constants.CELL_RED) ? lOwn : (lOwn & this.mKings);
+		int lUp = (mNextPlayer == Constants.CELL_WHITE) ? lOwn : (lOwn & this.mKings);
+
+		int lTargets = downLeft(lDown) | downRight(lDown) | upLeft(lUp) | upRight(lUp);
+		return 0 != (lTargets & lEmpty);
+	} // End canStep
+
 	/**
 	 * Tries to make a jump from a certain position of the board
 	 *
-	 * @param pMoves a vector where the valid moves will be inserted
-	 * @param pOther the \ref ECell code corresponding to the player who is not making the move
-	 * @param pR the row of the cell we are moving from
-	 * @param pC the col
-	 * @param pKing true if the moving piece is a king
-	 * @param pBuffer a buffer where the list of jump positions is
-	 *   inserted (for multiple jumps)
+	 * @param pMoves a buffer where the valid moves will be written
+	 * @param pCount the number of moves already in pMoves
+	 * @param pSquare the index (cell - 1) of the square we are jumping from
+	 * @param pFirstDir the first direction the piece may move in
+	 * @param pLastDir one past the last direction the piece may move in
+	 * @param pOther the opponent pieces that have not been captured yet
+	 * @param pEmpty the squares we may land on. The moving piece and the
+	 *   pieces captured so far are not on the board anymore.
+	 * @param pPath the squares visited so far, packed as in Move.pack()
 	 * @param pDepth the number of multiple jumps before this attempt
+	 * @return the number of moves in pMoves after the attempt
 	 */
-	private boolean tryJump(Vector<Move> pMoves, int pR, int pC, boolean pKing,
-			int[] pBuffer, int pDepth) {
-	    
-		// Remove ourself temporarily
-		int lOldSelf = this.get(pR, pC);
-		this.set(pR, pC, Constants.CELL_EMPTY);
-
-		pBuffer[pDepth] = GameState.rowColToCell(pR, pC);
-
-	    boolean lFound = false;
-	    int lOther = mNextPlayer ^ (Constants.CELL_WHITE | Constants.CELL_RED);
-
-	    // Try capturing downwards
-	    if(mNextPlayer == Constants.CELL_RED || pKing) {
-	        // Try capturing left
-	        if( 0 != (this.get(pR+1, pC-1) & lOther) && this.get(pR+2,pC-2) == Constants.CELL_EMPTY) {
-	            lFound = true;
-	            int lOldValue = get(pR+1, pC-1);
-	            this.set(pR+1, pC-1, Constants.CELL_EMPTY);
-	            this.tryJump(pMoves, pR+2, pC-2, pKing, pBuffer, pDepth + 1);
-	            this.set(pR+1, pC-1, lOldValue);
-	        } // End if
-	        
-	        // Try capturing right
-	        if( 0 != (this.get(pR+1, pC+1) & lOther) && this.get(pR+2,pC+2) == Constants.CELL_EMPTY) {
-	            lFound = true;
-	            int lOldValue = this.get(pR+1, pC+1);
-	            this.set(pR+1, pC+1, Constants.CELL_EMPTY);
-	            this.tryJump(pMoves, pR+2, pC+2, pKing, pBuffer, pDepth + 1);
-	            this.set(pR+1, pC+1, lOldValue);
-	        } // End if
-	    } // End if
-	    
-	    // Try capturing upwards
-	    if(mNextPlayer == Constants.CELL_WHITE || pKing) {
-	        // Try capturing left
-	        if( 0 != (this.get(pR-1, pC-1) & lOther) && this.get(pR-2, pC-2) == Constants.CELL_EMPTY) {
-	            lFound = true;
-	            int lOldValue = this.get(pR-1, pC-1);
-	            this.set(pR-1, pC-1, Constants.CELL_EMPTY);
-	            this.tryJump(pMoves, pR-2, pC-2, pKing, pBuffer, pDepth + 1);
-	            this.set(pR-1, pC-1, lOldValue);
-	        } // End if
-	        // Try capturing right
-	        if( 0 != (this.get(pR-1, pC+1) & lOther) && this.get(pR-2, pC+2) == Constants.CELL_EMPTY) {
-	            lFound = true;
-	            int lOldValue = this.get(pR-1, pC+1);
-	            this.set(pR-1, pC+1, Constants.CELL_EMPTY);
-	            this.tryJump(pMoves, pR-2, pC+2, pKing, pBuffer, pDepth + 1);
-	            this.set(pR-1, pC+1, lOldValue);
-	        } // End if
-	    } // End if
+	private static int tryJump(long[] pMoves, int pCount, int pSquare, int pFirstDir, int pLastDir,
+			int pOther, int pEmpty, long pPath, int pDepth) {
+
+		assert(pDepth < Move.cPackedMaxSquares);
 
-	    // Restore ourself
-		this.set(pR, pC, lOldSelf);
+		long lPath = pPath
+				| ((long) pSquare << (Move.cPackedTypeBits + pDepth * Move.cPackedSquareBits));
+		int lCount = pCount;
+		int lBase = pSquare * cDirections;
 
-	    if(!lFound && pDepth > 0) {
-	    	Vector<Integer> tmp = new Vector<Integer>();
-	    	for (int z : pBuffer) {
-	    		tmp.add(z);
-	    	}
-	        pMoves.add(new Move(tmp, pDepth+1));
+		for (int d = pFirstDir; d < pLastDir; d++) {
+			int lOver = cNeighbour[lBase + d];
+			int lTo = cJumpLanding[lBase + d];
+			if (0 != (lOver & pOther) && 0 != (lTo & pEmpty)) {
+				lCount = GameState.tryJump(pMoves, lCount, Integer.numberOfTrailingZeros(lTo),
+						pFirstDir, pLastDir, pOther & ~lOver, pEmpty | lOver, lPath, pDepth + 1);
+			} // End if
+		} // End for
+
+	    // Every jump found ends in at least one move, so if nothing was
+	    // added this is the last square of the sequence
+	    if(lCount == pCount && pDepth > 0) {
+	        pMoves[lCount++] = lPath | pDepth;
 	    } // End if
-	    return lFound;
+	    return lCount;
 	} // End TryJump
 
 	/**
 	 * Tries to make a move from a certain position
 	 *
-	 * @param pMoves vector where the valid moves will be inserted
-	 * @param pCell the cell where the move is tried from
-	 * @param pOther the \ref ECell code corresponding to the player
-	 * 		who is not making the move
-	 * @param pKing true if the piece is a king
-	 */
-	void tryMove(Vector<Move> pMoves, int pCell, boolean pKing) {
-	    int lR = GameState.cellToRow(pCell);
-	    int lC = GameState.cellToCol(pCell);
-	    // Try moving downwards
-	    if(mNextPlayer == Constants.CELL_RED || pKing) {
-	        // Try moving right
-	        if(this.get(lR+1,lC-1) == Constants.CELL_EMPTY) {
-	            pMoves.add(new Move(pCell, GameState.rowColToCell(lR+1, lC-1)));
-	        } // End if
-	        
-	        //try moving left
-	        if(this.get(lR+1, lC+1) == Constants.CELL_EMPTY) {
-	            pMoves.add(new Move(pCell, GameState.rowColToCell(lR+1, lC+1)));
-	        } // End if
-	    } // End if
-	    
-	    // Try moving upwards
-	    if(mNextPlayer == Constants.CELL_WHITE || pKing) {
-	        // Try moving right
-	        if(this.get(lR-1, lC-1) == Constants.CELL_EMPTY) {
-	            pMoves.add(new Move(pCell, GameState.rowColToCell(lR-1, lC-1)));
-	        } // End if
-	        // Try moving left
-	        if(this.get(lR-1, lC+1) == Constants.CELL_EMPTY) {
-	            pMoves.add(new Move(pCell, GameState.rowColToCell(lR-1,lC+1)));
-	    	} // End if
-	    } // End if
+	 * @param pMoves a buffer where the valid moves will be written
+	 * @param pCount the number of moves already in pMoves
+	 * @param pSquare the index (cell - 1) of the square the move is tried from
+	 * @param pFirstDir the first direction the piece may move in
+	 * @param pLastDir one past the last direction the piece may move in
+	 * @param pEmpty the empty squares
+	 * @return the number of moves in pMoves after the attempt
+	 */
+	private static int tryMove(long[] pMoves, int pCount, int pSquare, int pFirstDir, int pLastDir,
+			int pEmpty) {
+		int lCount = pCount;
+		int lBase = pSquare * cDirections;
+
+		for (int d = pFirstDir; d < pLastDir; d++) {
+			int lTo = cNeighbour[lBase + d] & pEmpty;
+			if (lTo != 0) {
+				pMoves[lCount++] = Move.packNormal(pSquare + 1, Integer.numberOfTrailingZeros(lTo) + 1);
+			} // End if
+		} // End for
+	    return lCount;
 	} // End TryMove
 
 	/**
+	 * Writes all valid moves for the player to move into a buffer, without
+	 * allocating anything. Searchers should keep one buffer per ply and
+	 * reuse it.
 	 *
-	 * @param pMoves a vector where the list of moves will be appended
-	 * @param pWho the \ref ECell code (CELL_OWN or CELL_OTHER) of the
-	 *  player making the move
-	 * @return a list of all valid moves for \p pWho
+	 * Like findPossibleMoves(Vector), this yields a single MOVE_DRAW when the
+	 * draw counter has run out, a single MOVE_RW/MOVE_WW when the player has
+	 * no moves, and nothing if the game is already over.
+	 *
+	 * @param pMoves a buffer of at least cMaxMoves entries, where the moves
+	 *   are written in packed form (see Move.pack())
+	 * @return the number of moves written
 	 */
-	void findPossibleMoves(Vector<GameState> pStates) {
-
-	    pStates.clear();
+	int findPossibleMoves(long[] pMoves) {
+		if (SearchMetrics.cEnabled) {
+			SearchMetrics.cMoveGenerations.increment();
+		} // End if
 
-	    if (mLastMove.isEOG()) {
-	    	return;
+	    if (this.isEOG()) {
+	    	return 0;
 	    } // End if
 	    
 	    if (mMovesUntilDraw <= 0) {
-	    	try {
-				pStates.add(new GameState((GameState) this.clone(), new Move(Move.MoveType.MOVE_DRAW)));
-			} catch (CloneNotSupportedException e) {
-				e.printStackTrace();
-			}
-	    	return;
+	    	pMoves[0] = Move.packSpecial(Move.MoveType.MOVE_DRAW.getInternalValue());
+	    	return 1;
 	    } // End if
 
 	    // Normal moves are forbidden if any jump is found
-	    boolean lFound = false;
-	    int[] lPieces = new int[GameState.cPlayerPieces];
-	    int[] lMoveBuffer = new int[GameState.cPlayerPieces];
-		Vector<Move> lMoves = new Vector<Move>();
-		
-	    int lNumPieces=0;
-	    for (int i = 1; i <= cSquares; i++) {
-	        // Is this a piece which belongs to the player making the move?
-	        if (0 != (this.get(i) & mNextPlayer)) {
-	            boolean lIsKing = 0 != (this.get(i) & Constants.CELL_KING);
-
-	            if (this.tryJump(lMoves, GameState.cellToRow(i), GameState.cellToCol(i), lIsKing, lMoveBuffer)) {
-	                lFound=true;
-	            } // End if
-	            lPieces[lNumPieces++]=i;
-	        } // End if
-	    } // End for
+	    int lCount = this.findJumps(pMoves);
+	    if (lCount == 0) {
+	    	lCount = this.findNormalMoves(pMoves);
+	    } // End if
 
-	    // Try normal moves if no jump was found
-	    if (!lFound) {
-	        for (int k = 0; k < lNumPieces; k++) {
-	            int lCell = lPieces[k];
-	            boolean lIsKing = 0 != (this.get(lCell) & Constants.CELL_KING);
-	            this.tryMove(lMoves, lCell, lIsKing);
-	        } // End for
+	    // Admit loss if no moves can be found
+	    if (lCount == 0) {
+	    	pMoves[lCount++] = this.lossMove();
 	    } // End if
+	    return lCount;
+	} // End findPossibleMoves
+
+	/**
+	 * Writes only the jumps (captures) available to the player to move.
+	 * Unlike findPossibleMoves(long[]), it doesn't look at the draw counter
+	 * or the end of game.
+	 *
+	 * @param pMoves a buffer of at least cMaxMoves entries
+	 * @return the number of jumps written
+	 */
+	int findJumps(long[] pMoves) {
+		if (!this.canJump()) {
+			return 0;
+		} // End if
+
+		int lCount = 0;
+		int lOwn = this.pieces(mNextPlayer);
+		int lOther = this.pieces(mNextPlayer ^ (Constants.CELL_RED | Constants.CELL_WHITE));
+		int lEmpty = ~(this.mRed | this.mWhite);
+
+		// Men move down if red, up if white. Kings move in all directions
+		int lManFirstDir = (mNextPlayer == Constants.CELL_RED) ? cDownLeft : cUpLeft;
+		int lManLastDir = lManFirstDir + 2;
+
+		for (int lLeft = lOwn; lLeft != 0; lLeft &= lLeft - 1) {
+			int lSquare = Integer.numberOfTrailingZeros(lLeft);
+			boolean lIsKing = 0 != (this.mKings & (1 << lSquare));
+
+			// The jumping piece leaves its square, so it is a valid landing square
+			lCount = GameState.tryJump(pMoves, lCount, lSquare,
+					lIsKing ? 0 : lManFirstDir, lIsKing ? cDirections : lManLastDir,
+					lOther, lEmpty | (1 << lSquare), 0, 0);
+		} // End for
+		return lCount;
+	} // End findJumps
+
+	/**
+	 * Writes the normal (non-jump) moves of the player to move. These are
+	 * only legal if findJumps() finds nothing.
+	 *
+	 * @param pMoves a buffer of at least cMaxMoves entries
+	 * @return the number of moves written
+	 */
+	int findNormalMoves(long[] pMoves) {
+		int lCount = 0;
+		int lOwn = this.pieces(mNextPlayer);
+		int lEmpty = ~(this.mRed | this.mWhite);
+
+		// Men move down if red, up if white. Kings move in all directions
+		int lManFirstDir = (mNextPlayer == Constants.CELL_RED) ? cDownLeft : cUpLeft;
+		int lManLastDir = lManFirstDir + 2;
+
+		for (int lLeft = lOwn; lLeft != 0; lLeft &= lLeft - 1) {
+			int lSquare = Integer.numberOfTrailingZeros(lLeft);
+			boolean lIsKing = 0 != (this.mKings & (1 << lSquare));
+			lCount = GameState.tryMove(pMoves, lCount, lSquare,
+					lIsKing ? 0 : lManFirstDir, lIsKing ? cDirections : lManLastDir, lEmpty);
+		} // End for
+		return lCount;
+	} // End findNormalMoves
+
+	/**
+	 * @return the packed move by which the player to move admits loss
+	 */
+	long lossMove() {
+		return Move.packSpecial(mNextPlayer == Constants.CELL_WHITE
+				? Move.MoveType.MOVE_RW.getInternalValue()
+				: Move.MoveType.MOVE_WW.getInternalValue());
+	} // End lossMove
+
+	/**
+	 *
+	 * @param pStates a vector where the states reachable in one move
+	 *  from this one will be stored
+	 */
+	void findPossibleMoves(Vector<GameState> pStates) {
+
+	    pStates.clear();
+
+	    long[] lMoves = new long[GameState.cMaxMoves];
+	    int lCount = this.findPossibleMoves(lMoves);
 
 	    // Convert moves to GameStates
-	    for (int i = 0; i < lMoves.size(); i++) {
-	    	try {
-				pStates.add(new GameState((GameState) this.clone(), lMoves.elementAt(i)));
-			} catch (CloneNotSupportedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+	    for (int i = 0; i < lCount; i++) {
+	    	pStates.add(new GameState(this, lMoves[i]));
 	    } // End for
-	    
-	    // Admit loss if no moves can be found
-	    if (pStates.size() == 0) {
-	    	try {
-				pStates.add(
-						new GameState((GameState) this.clone(), 
-						new Move(mNextPlayer == Constants.CELL_WHITE ? Move.MoveType.MOVE_RW : Move.MoveType.MOVE_WW)));
-			} catch (CloneNotSupportedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-	    } // End if
 	} // End FindPossibleMoves
 
+	/**
+	 * Moves the piece on square pFrom to the empty square pTo, promoting
+	 * it if it reaches the far row
+	 *
+	 * @param pFrom index (cell - 1) of the source square
+	 * @param pTo index (cell - 1) of the destination square
+	 */
+	private void movePiece(int pFrom, int pTo) {
+		int lFrom = 1 << pFrom;
+		int lTo = 1 << pTo;
+		int lMask = lFrom | lTo;
+
+		this.togglePiece(pFrom, -1);
+
+		if (0 != (this.mRed & lFrom)) {
+			this.mRed ^= lMask;
+		} else {
+			this.mWhite ^= lMask;
+		} // End else
+
+		if (0 != (this.mKings & lFrom)) {
+			this.mKings ^= lMask;
+		} // End if
+
+		// Promote to king if we should
+		this.mKings |= lTo & ((this.mRed & cRedKingRow) | (this.mWhite & cWhiteKingRow));
+
+		this.togglePiece(pTo, 1);
+	} // End movePiece
+
 	/**
 	 * Transforms the board by performing a move
 	 *
@@ -517,66 +809,92 @@ public class GameState implements Cloneable {
 	 * @param pMove the move to perform
 	 */
 	public void doMove(final Move pMove) {
-	    
-		if (pMove.isJump()) {
-	    	// Row and column of source cell
-	        int sr = GameState.cellToRow(pMove.at(0));
-	        int sc = GameState.cellToCol(pMove.at(0));
+		this.doMove(pMove.pack());
+	} // End DoMove
+
+	/**
+	 * Same as above, for a move in the packed form written by findPossibleMoves(long[])
+	 *
+	 * The move can be taken back with undoMove(), so a search can walk the
+	 * game tree on a single board.
+	 */
+	public void doMove(long pMove) {
+		// Remember what we need to undo the move
+		if (this.mHistory == null) {
+			this.mHistory = new long[64 * cHistoryStride];
+		} else if (this.mHistorySize == this.mHistory.length) {
+			this.mHistory = Arrays.copyOf(this.mHistory, 2 * this.mHistory.length);
+		} // End else
+
+		this.mHistory[this.mHistorySize]     = this.mLastMove;
+		this.mHistory[this.mHistorySize + 1] = ((long) this.mRed << 32) | (this.mWhite & 0xFFFFFFFFL);
+		this.mHistory[this.mHistorySize + 2] = ((long) this.mMovesUntilDraw << 32) | (this.mKings & 0xFFFFFFFFL);
+		this.mHistory[this.mHistorySize + 3] = this.mKey;
+		this.mHistory[this.mHistorySize + 4] = this.mMirrorKey;
+		this.mHistory[this.mHistorySize + 5] = this.mScore;
+		this.mHistorySize += cHistoryStride;
+
+		this.applyMove(pMove);
+	} // End DoMove
+
+	/**
+	 * Takes back the last move made with doMove(), restoring captured pieces,
+	 * promotions, the draw counter, the player to move and the last move.
+	 */
+	public void undoMove() {
+		assert(this.mHistorySize > 0);
+
+		this.mHistorySize -= cHistoryStride;
+		long lBoard = this.mHistory[this.mHistorySize + 1];
+		long lStatus = this.mHistory[this.mHistorySize + 2];
+
+		this.mLastMove = this.mHistory[this.mHistorySize];
+		this.mRed = (int) (lBoard >>> 32);
+		this.mWhite = (int) lBoard;
+		this.mKings = (int) lStatus;
+		this.mMovesUntilDraw = (int) (lStatus >>> 32);
+		this.mKey = this.mHistory[this.mHistorySize + 3];
+		this.mMirrorKey = this.mHistory[this.mHistorySize + 4];
+		this.mScore = (int) this.mHistory[this.mHistorySize + 5];
+		this.mNextPlayer = this.mNextPlayer ^ (Constants.CELL_RED | Constants.CELL_WHITE);
+	} // End undoMove
 
+	/**
+	 * Performs a packed move without recording it for undoMove()
+	 */
+	private void applyMove(long pMove) {
+		int lType = (int) pMove & Move.cPackedSpecial;
+
+		if (lType == Move.MoveType.MOVE_NORMAL.getInternalValue()) {
+	    	// Move the piece
+			this.movePiece(Move.packedAt(pMove, 0) - 1, Move.packedAt(pMove, 1) - 1);
+	        
+	        // Decrease number of moves left until draw
+	        --mMovesUntilDraw;
+
+		} else if (lType != Move.cPackedSpecial) {
 	    	// Perform all jumps
-	        for(int i = 1; i < pMove.length(); i++) {
-	        	// Destination cell
-	            int dr = GameState.cellToRow(pMove.at(i));
-	            int dc = GameState.cellToCol(pMove.at(i));
+			int lFrom = Move.packedAt(pMove, 0) - 1;
+	        for(int i = 1; i <= lType; i++) {
+	        	int lTo = Move.packedAt(pMove, i) - 1;
 
 	            // Move the jumping piece
-	            this.set(pMove.at(i), this.get(pMove.at(i-1)));
-	            this.set(pMove.at(i-1), Constants.CELL_EMPTY);
-
-	            // Promote to king if we should
-	            if (
-	            		(dr == 7 && 0 != (this.get(pMove.at(i)) & Constants.CELL_RED) ) 
-	            		|| 
-	            		(dr == 0 && 0 != (this.get(pMove.at(i)) & Constants.CELL_WHITE) )
-	            	) {
-	            	
-	                this.set(pMove.at(i), this.get(pMove.at(i)) | Constants.CELL_KING);
-
-	            } // End if
-	            
+	        	this.movePiece(lFrom, lTo);
+
 	            // Remove the piece being jumped over
-	            this.set( 
-	            		GameState.rowColToCell((sr+dr)>>1, (sc+dc)>>1), 
-	            		Constants.CELL_EMPTY
-	            		);
-
-	            // Prepare for next jump
-	            sr = dr;
-	            sc = dc;
+	        	int lSquare = cJumped[(lFrom << 5) | lTo];
+	        	this.togglePiece(lSquare, -1);
+	        	int lCaptured = ~(1 << lSquare);
+	        	this.mRed &= lCaptured;
+	        	this.mWhite &= lCaptured;
+	        	this.mKings &= lCaptured;
+
+	        	// Prepare for next jump
+	        	lFrom = lTo;
 	        } // End for
 
 	        // Reset number of moves left until draw
 	        mMovesUntilDraw = cMovesUntilDraw;
-	    
-		} else if(pMove.isNormal()) {
-	    	// Move the piece
-	        this.set(pMove.at(1), this.get(pMove.at(0)));
-	        this.set(pMove.at(0), Constants.CELL_EMPTY);
-
-	        // Promote to king if we should
-	        int lDR = GameState.cellToRow(pMove.at(1));
-	        if (
-	        		(lDR == 7 && 0 != (this.get(pMove.at(1)) & Constants.CELL_RED)) 
-	        		|| 
-	        		(lDR == 0 && 0 != (this.get(pMove.at(1)) & Constants.CELL_WHITE))
-	        	) {
-	        	
-	            this.set(pMove.at(1), this.get(pMove.at(1)) | Constants.CELL_KING);
-	        
-	        } // End if
-	        
-	        // Decrease number of moves left until draw
-	        --mMovesUntilDraw;
 	    } // End if
 
 	    // Remember last move
@@ -584,8 +902,10 @@ public class GameState implements Cloneable {
 
 	    // Swap player
 	    mNextPlayer = mNextPlayer ^ (Constants.CELL_RED | Constants.CELL_WHITE);
+	    mKey ^= cZobristWhite;
+	    mMirrorKey ^= cZobristWhite;
 
-	} // End DoMove
+	} // End applyMove
 
 
 	/**
@@ -604,16 +924,9 @@ public class GameState implements Cloneable {
 		final String board_left = (cell_text == Constants.SIMPLE_TEXT) ? "| " : "│ ";
 		final String board_right = (cell_text == Constants.SIMPLE_TEXT) ? "|" : "│";
 	
-		int red_pieces = 0;
-		int white_pieces = 0;
-		
 		// Count pieces
-		for (int i = 1; i <= 32; i++) {
-			if (0 != (this.get(i) & Constants.CELL_RED))
-				++red_pieces;
-			else if (0 != (this.get(i) & Constants.CELL_WHITE))
-				++white_pieces;
-		} // End for
+		int red_pieces = Integer.bitCount(this.mRed);
+		int white_pieces = Integer.bitCount(this.mWhite);
 	
 		// Use a StringBuffer to compose the string
 		StringBuffer ss = new StringBuffer();
@@ -633,7 +946,7 @@ public class GameState implements Cloneable {
 		ss.append("  9 " + board_left); 
 		for(int c = 0; c < 8; c++)
 			ss.append(cell_text[this.get(2, c)]);
-		ss.append(board_right + " 12     Last move: " + mLastMove.toString());
+		ss.append(board_right + " 12     Last move: " + this.getMove().toString());
 
 		if ((pPlayer == Constants.CELL_RED && this.isRedWin()) || 
 			(pPlayer == Constants.CELL_WHITE && this.isWhiteWin()) )
@@ -685,13 +998,13 @@ public class GameState implements Cloneable {
 
 		// The board goes first
 		for(int i = 0; i < cSquares; i++) {
-			ss.append(Constants.MESSAGE_SYMBOLS[mCell[i]]);
+			ss.append(Constants.MESSAGE_SYMBOLS[this.get(i + 1)]);
 		} // End for
 		
 		// Then the information about moves
 		assert(mNextPlayer == Constants.CELL_WHITE || mNextPlayer == Constants.CELL_RED);
 		
-		ss.append(" " + mLastMove.toMessage() + " " + Constants.MESSAGE_SYMBOLS[mNextPlayer] + " " + (int) mMovesUntilDraw);
+		ss.append(" " + this.getMove().toMessage() + " " + Constants.MESSAGE_SYMBOLS[mNextPlayer] + " " + (int) mMovesUntilDraw);
 
 		return ss.toString();
 	} // End ToMessage
@@ -700,9 +1013,16 @@ public class GameState implements Cloneable {
 	 * Get the last move made (the move that lead to this state)
 	 */
 	public final Move getMove() {
-		return this.mLastMove;
+		return Move.valueOf(this.mLastMove);
 	} // End GetMove
 
+	/**
+	 * Get the last move made, in packed form
+	 */
+	final long getPackedMove() {
+		return this.mLastMove;
+	} // End getPackedMove
+
 	public final int getNextPlayer() {
 		return this.mNextPlayer;
 	} // End GetNextPlayer
@@ -711,39 +1031,126 @@ public class GameState implements Cloneable {
 		return this.mMovesUntilDraw;
 	} // End GetMovesUntilDraw
 
+	/**
+	 * @return a 64-bit Zobrist key of the piece placement, the kings and
+	 *   the player to move. Equal states (see equals()) have equal keys.
+	 */
+	final long getKey() {
+		return this.mKey;
+	} // End getKey
+
+	/**
+	 * @return the key of reversed(), without building it
+	 */
+	final long getMirrorKey() {
+		return this.mMirrorKey;
+	} // End getMirrorKey
+
+	/**
+	 * A state and its reversed() are the same position seen from the other
+	 * side, so a table of positions only needs to hold one of them. The
+	 * canonical key is the same for both.
+	 *
+	 * @return the smaller of getKey() and getMirrorKey()
+	 * @see isMirrored()
+	 */
+	final long getCanonicalKey() {
+		return Math.min(this.mKey, this.mMirrorKey);
+	} // End getCanonicalKey
+
+	/**
+	 * @return true if the canonical key is the key of reversed(). Moves
+	 *   stored under the canonical key are then moves of the reversed
+	 *   board, and must be turned back with Move.reversed(long).
+	 */
+	final boolean isMirrored() {
+		return this.mMirrorKey < this.mKey;
+	} // End isMirrored
+
+	/**
+	 * @return true if the two states have the same pieces in the same
+	 *   places and the same player to move. The last move and the draw
+	 *   counter are not compared, like in the key.
+	 */
+	@Override
+	public boolean equals(Object pRH) {
+		if (!(pRH instanceof GameState)) {
+			return false;
+		} // End if
+
+		GameState lRH = (GameState) pRH;
+		return this.mRed == lRH.mRed && this.mWhite == lRH.mWhite
+				&& this.mKings == lRH.mKings && this.mNextPlayer == lRH.mNextPlayer;
+	} // End equals
+
+	@Override
+	public int hashCode() {
+		return (int) (this.mKey ^ (this.mKey >>> 32));
+	} // End hashCode
+
+	/**
+	 * @return the bitboard of red pieces (bit i is cell i+1)
+	 */
+	final int getRed() {
+		return this.mRed;
+	} // End getRed
+
+	/**
+	 * @return the bitboard of white pieces (bit i is cell i+1)
+	 */
+	final int getWhite() {
+		return this.mWhite;
+	} // End getWhite
+
+	/**
+	 * @return the bitboard of kings of either colour (bit i is cell i+1)
+	 */
+	final int getKings() {
+		return this.mKings;
+	} // End getKings
+
+	/**
+	 * @return the material and piece-square value of the pieces on the
+	 *   board (see Evaluator), red minus white. It is kept up to date by
+	 *   every change to the board and restored by undoMove().
+	 */
+	final int getScore() {
+		return this.mScore;
+	} // End getScore
+
 	/**
 	 * @return true if the movement marks beginning of game
 	 */
 	boolean isBOG() {
-		return this.mLastMove.isBOG();
+		return Move.packedType(this.mLastMove) == Move.MoveType.MOVE_BOG.getInternalValue();
 	} // End IsBOG
 	
 	/**
 	 * @return true if the movement marks end of game
 	 */
 	boolean isEOG() {
-		return this.mLastMove.isEOG();
+		return Move.packedType(this.mLastMove) < Move.MoveType.MOVE_BOG.getInternalValue();
 	} // End IsEOG
 	
 	/**
 	 * @return true if the game ended in red win
 	 */
 	boolean isRedWin() {
-		return this.mLastMove.isRedWin();
+		return Move.packedType(this.mLastMove) == Move.MoveType.MOVE_RW.getInternalValue();
 	} // End IsRedWin
 	
 	/**
 	 * @return true if the game ended in white win
 	 */
 	boolean isWhiteWin() {
-		return mLastMove.isWhiteWin();
+		return Move.packedType(this.mLastMove) == Move.MoveType.MOVE_WW.getInternalValue();
 	} // End IsWhiteWin
 	
 	/**
 	 * @return true if the game ended in draw
 	 */
 	boolean isDraw() {
-		return mLastMove.isDraw();
+		return Move.packedType(this.mLastMove) == Move.MoveType.MOVE_DRAW.getInternalValue();
 	} // End IsDraw
 
 } // End Class GameState
@@ -1,7 +1,8 @@
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Date;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public class Main {
 
@@ -14,6 +15,8 @@ public class Main {
 		boolean init = false;
 		boolean verbose = false;
 		boolean fast = false;
+		boolean ponder = false;
+		int threads = Runtime.getRuntime().availableProcessors();
 		
 		for (int i = 0; i < args.length; ++i) {
 			String param = args[i];
@@ -24,6 +27,10 @@ public class Main {
 				verbose = true;
 			} else if (param.equals("fast") || param.equals("f")) {
 				fast = true;
+			} else if (param.equals("ponder") || param.equals("p")) {
+				ponder = true;
+			} else if ((param.equals("threads") || param.equals("t")) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
 			} else {
 				System.err.println("Unknown parameter: '" + args[i] + "'");
 				return;
@@ -34,31 +41,30 @@ public class Main {
 		 * Start the game by sending the starting board without moves 
 		 * if the parameter "init" is given
 		 */
+		// Messages are read and written through reused buffers
+		MessageCodec codec = new MessageCodec();
+		InputStream in = new BufferedInputStream(System.in);
+		OutputStream out = new BufferedOutputStream(System.out);
+
 		if (init) {
-			String message = new GameState().toMessage();
-			//System.err.println("Sending initial board: '" + message + "'");
-			System.out.println(message);
+			codec.writeLine(new GameState(), out);
 		} // End if
 
-		Player player = new Player();
-
-		String input_message;
-		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-		while ((input_message = br.readLine()) != null) {
-			// Deadline is one second from when we receive the message
-			Deadline deadline = new Deadline(new Date(new Date().getTime() + (fast ? (long) 1e5 : (long) 1e6)));
-
-			// Get game state from standard input
-			//System.err.println("Receiving: '" + input_message + "'");
-			GameState input_state = new GameState(input_message);
+		Player player = new Player(threads);
+		GameState input_state = new GameState();
+		while (codec.readLine(in) >= 0) {
+			// Deadline is one second from when we receive the message,
+			// or 100 ms if fast
+			Deadline deadline = Deadline.fromNow(fast ? 100 : 1000);
 
-			// See if we would produce the same message
-			if (!input_state.toMessage().equals(input_message)) {
+			// Get game state from standard input. A message that can't be
+			// read can't be answered, so quit with an error rather than
+			// leave the opponent waiting for a reply.
+			if (!codec.decode(input_state)) {
 				System.err.println("*** ERROR! ***");
-				System.err.println("Interpreted: '" + input_message + "'");
-				System.err.println("As:          '" + input_state.toMessage() + "'");
-				System.err.println(input_state.toString(input_state.getNextPlayer()));
-				assert(false);
+				System.err.println("Invalid message: '" + codec.lastLine() + "'");
+				player.stopPondering();
+				System.exit(1);
 			} // End if
 
 			// Print the input state
@@ -68,7 +74,7 @@ public class Main {
 			} // End if
 			
 			// Quit if this is end of game
-			if (input_state.getMove().isEOG()) {
+			if (input_state.isEOG()) {
 				break;
 			} // End if
 			
@@ -82,15 +88,19 @@ public class Main {
 			} // End if
 			
 			// Send the next move
-			String output_message = output_state.toMessage();
-			//System.err.println("Sending: '" + output_message + "'");
-			System.out.println(output_message);
+			codec.writeLine(output_state, out);
 
 			// Quit if this is end of game
-			if (output_state.getMove().isEOG()) {
+			if (output_state.isEOG()) {
 				break;
 			} // End if
+
+			// Think on the opponent's time until its move comes
+			if (ponder) {
+				player.ponder(output_state);
+			} // End if
 		} // End while
+		player.stopPondering();
 	} // End main
 
 } // End class Main
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the messages of GameState.toMessage() without
+ * allocating
+ *
+ * Messages are ASCII, so they are handled as bytes. A codec owns one input
+ * and one output buffer, which it reuses for every message, and decodes
+ * into an existing GameState. The message is checked while it is parsed:
+ * decode() rejects anything toMessage() can't produce, instead of guessing
+ * like GameState(String).
+ *
+ * A codec is not thread-safe; use one per thread.
+ */
+public class MessageCodec {
+	/**
+	 * Longer than any valid message: 32 cells, a jump of 11 captures, the
+	 * player and the draw counter, with separators
+	 */
+	static final int cMaxMessageBytes = 128;
+
+	private static final byte cSeparator = ' ';
+	private static final byte cDelimiter = (byte) Move.cDelimiter.charAt(0);
+
+	/**
+	 * The cell contents of each message symbol, or -1 if it isn't one
+	 */
+	private static final int[] cCells = new int[128];
+	static {
+		Arrays.fill(cCells, -1);
+		int[] lCells = { Constants.CELL_EMPTY, Constants.CELL_RED, Constants.CELL_WHITE,
+				Constants.CELL_RED | Constants.CELL_KING, Constants.CELL_WHITE | Constants.CELL_KING };
+		for (int lCell : lCells) {
+			cCells[Constants.MESSAGE_SYMBOLS[lCell]] = lCell;
+		} // End for
+	} // End static
+
+	private final byte[] mIn = new byte[cMaxMessageBytes];
+	private int mInLength;
+	private final byte[] mOut = new byte[cMaxMessageBytes + 1];
+	private int mOutLength;
+
+	/**
+	 * Reads one line into the input buffer. The line ending (\n or \r\n)
+	 * is dropped. A line too long to be a message is cut short, and will
+	 * fail to decode.
+	 *
+	 * @return the length of the line, or -1 at the end of the stream
+	 */
+	public int readLine(InputStream pIn) throws IOException {
+		return this.mInLength = MessageCodec.readLine(pIn, this.mIn, 0, this.mIn.length);
+	} // End readLine
+
+	/**
+	 * Reads one line into a buffer, the same as above
+	 *
+	 * @param pBuffer where to store the line
+	 * @param pOffset where the line starts
+	 * @param pMax the most bytes of the line to keep
+	 * @return the length of the line, or -1 at the end of the stream
+	 */
+	public static int readLine(InputStream pIn, byte[] pBuffer, int pOffset, int pMax) throws IOException {
+		int lLength = 0;
+		int lByte = pIn.read();
+		if (lByte < 0) {
+			return -1;
+		} // End if
+
+		while (lByte >= 0 && lByte != '\n') {
+			if (lLength < pMax) {
+				pBuffer[pOffset + lLength++] = (byte) lByte;
+			} // End if
+			lByte = pIn.read();
+		} // End while
+
+		if (lLength > 0 && pBuffer[pOffset + lLength - 1] == '\r') {
+			lLength--;
+		} // End if
+		return lLength;
+	} // End readLine
+
+	/**
+	 * Decodes the line last read by readLine()
+	 *
+	 * @param pState the state to decode into. It is left unchanged if the
+	 *   line is not a valid message.
+	 * @return true if the line is a valid message
+	 */
+	public boolean decode(GameState pState) {
+		return this.mInLength >= 0 && MessageCodec.decode(this.mIn, 0, this.mInLength, pState);
+	} // End decode
+
+	/**
+	 * @return the line last read by readLine(), for error messages
+	 */
+	public String lastLine() {
+		return (this.mInLength < 0) ? "" : new String(this.mIn, 0, this.mInLength,
+				StandardCharsets.US_ASCII);
+	} // End lastLine
+
+	/**
+	 * Writes the message of pState followed by a new line, and flushes
+	 */
+	public void writeLine(GameState pState, OutputStream pOut) throws IOException {
+		this.mOutLength = MessageCodec.encode(pState, this.mOut, 0);
+		this.mOut[this.mOutLength++] = '\n';
+		pOut.write(this.mOut, 0, this.mOutLength);
+		pOut.flush();
+	} // End writeLine
+
+	/**
+	 * Decodes a message
+	 *
+	 * @param pBuffer the buffer holding the message
+	 * @param pOffset where the message starts
+	 * @param pLength the length of the message
+	 * @param pState the state to decode into. It is left unchanged if the
+	 *   message is not valid.
+	 * @return true if the message is valid
+	 */
+	public static boolean decode(byte[] pBuffer, int pOffset, int pLength, GameState pState) {
+		int lEnd = pOffset + pLength;
+		int i = pOffset;
+
+		// The board
+		if (pLength < GameState.cSquares) {
+			return false;
+		} // End if
+		int lRed = 0;
+		int lWhite = 0;
+		int lKings = 0;
+		for (int lSquare = 0; lSquare < GameState.cSquares; lSquare++, i++) {
+			int lSymbol = pBuffer[i];
+			int lCell = (lSymbol >= 0) ? cCells[lSymbol] : -1;
+			if (lCell < 0) {
+				return false;
+			} // End if
+			lRed |= (lCell & Constants.CELL_RED) << lSquare;
+			lWhite |= ((lCell & Constants.CELL_WHITE) >>> 1) << lSquare;
+			lKings |= ((lCell & Constants.CELL_KING) >>> 2) << lSquare;
+		} // End for
+
+		// The last move: its type, then its cells
+		if (i >= lEnd || pBuffer[i++] != cSeparator) {
+			return false;
+		} // End if
+		boolean lNegative = i < lEnd && pBuffer[i] == '-';
+		if (lNegative) {
+			i++;
+		} // End if
+		int lStart = i;
+		int lType = 0;
+		while (i < lEnd && i - lStart < 2 && pBuffer[i] >= '0' && pBuffer[i] <= '9') {
+			lType = lType * 10 + (pBuffer[i++] - '0');
+		} // End while
+		if (i == lStart) {
+			return false;
+		} // End if
+		lType = lNegative ? -lType : lType;
+
+		long lMove;
+		if (lType < 0) {
+			if (lType < Move.MoveType.MOVE_NULL.getInternalValue()) {
+				return false;
+			} // End if
+			lMove = Move.packSpecial(lType);
+		} else {
+			int lLength = (lType == Move.MoveType.MOVE_NORMAL.getInternalValue()) ? 2 : lType + 1;
+			if (lLength > Move.cPackedMaxSquares) {
+				return false;
+			} // End if
+
+			lMove = lType;
+			for (int n = 0; n < lLength; n++) {
+				if (i >= lEnd || pBuffer[i++] != cDelimiter) {
+					return false;
+				} // End if
+				lStart = i;
+				int lCell = 0;
+				while (i < lEnd && i - lStart < 2 && pBuffer[i] >= '0' && pBuffer[i] <= '9') {
+					lCell = lCell * 10 + (pBuffer[i++] - '0');
+				} // End while
+				if (i == lStart || lCell < 1 || lCell > GameState.cSquares) {
+					return false;
+				} // End if
+				lMove |= (long) (lCell - 1) << (Move.cPackedTypeBits + n * Move.cPackedSquareBits);
+			} // End for
+		} // End else
+
+		// The player to move
+		if (i + 2 > lEnd || pBuffer[i++] != cSeparator) {
+			return false;
+		} // End if
+		int lNextPlayer;
+		if (pBuffer[i] == Constants.MESSAGE_SYMBOLS[Constants.CELL_RED]) {
+			lNextPlayer = Constants.CELL_RED;
+		} else if (pBuffer[i] == Constants.MESSAGE_SYMBOLS[Constants.CELL_WHITE]) {
+			lNextPlayer = Constants.CELL_WHITE;
+		} else {
+			return false;
+		} // End else
+		i++;
+
+		// The draw counter, which must end the message
+		if (i >= lEnd || pBuffer[i++] != cSeparator) {
+			return false;
+		} // End if
+		lStart = i;
+		int lMovesUntilDraw = 0;
+		while (i < lEnd && i - lStart < 3 && pBuffer[i] >= '0' && pBuffer[i] <= '9') {
+			lMovesUntilDraw = lMovesUntilDraw * 10 + (pBuffer[i++] - '0');
+		} // End while
+		if (i == lStart || i != lEnd || lMovesUntilDraw > 255) {
+			return false;
+		} // End if
+
+		pState.setState(lRed, lWhite, lKings, lNextPlayer, lMove, lMovesUntilDraw);
+		return true;
+	} // End decode
+
+	/**
+	 * Writes the message of pState, the same as toMessage()
+	 *
+	 * @param pBuffer where to write, with room for cMaxMessageBytes
+	 * @param pOffset where the message starts
+	 * @return the length of the message
+	 */
+	public static int encode(GameState pState, byte[] pBuffer, int pOffset) {
+		int i = pOffset;
+
+		for (int lCell = 1; lCell <= GameState.cSquares; lCell++) {
+			pBuffer[i++] = (byte) Constants.MESSAGE_SYMBOLS[pState.get(lCell)];
+		} // End for
+
+		long lMove = pState.getPackedMove();
+		pBuffer[i++] = cSeparator;
+		i = MessageCodec.putInt(Move.packedType(lMove), pBuffer, i);
+		int lLength = Move.packedLength(lMove);
+		for (int n = 0; n < lLength; n++) {
+			pBuffer[i++] = cDelimiter;
+			i = MessageCodec.putInt(Move.packedAt(lMove, n), pBuffer, i);
+		} // End for
+
+		pBuffer[i++] = cSeparator;
+		pBuffer[i++] = (byte) Constants.MESSAGE_SYMBOLS[pState.getNextPlayer()];
+		pBuffer[i++] = cSeparator;
+		i = MessageCodec.putInt(pState.getMovesUntilDraw(), pBuffer, i);
+		return i - pOffset;
+	} // End encode
+
+	/**
+	 * Writes pValue in decimal
+	 *
+	 * @return the position after the last digit
+	 */
+	private static int putInt(int pValue, byte[] pBuffer, int pOffset) {
+		int i = pOffset;
+		int lValue = pValue;
+		if (lValue < 0) {
+			pBuffer[i++] = '-';
+			lValue = -lValue;
+		} // End if
+
+		int lDigits = 1;
+		for (int lLeft = lValue / 10; lLeft > 0; lLeft /= 10) {
+			lDigits++;
+		} // End for
+		for (int n = lDigits - 1; n >= 0; n--) {
+			pBuffer[i + n] = (byte) ('0' + lValue % 10);
+			lValue /= 10;
+		} // End for
+		return i + lDigits;
+	} // End putInt
+} // End class MessageCodec
@@ -1,95 +1,303 @@
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Date;
-import java.util.Vector;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Lists the states that follow from the states read on standard input
+ *
+ * By default every line is a state message, answered with the number of
+ * successors and then one message per successor. A line that isn't a
+ * valid message gets a count of -1, so that every line has an answer.
+ *
+ * With "service", every line is a request "<id> <message>", where id is a
+ * number chosen by the caller. Requests are answered on several threads,
+ * in the order they complete, so answers carry the id of their request.
+ * Lines waiting on standard input are taken in batches of up to cBatchSize
+ * requests. In text, an answer is a line "<id> <count>" followed by count
+ * successor messages; an invalid request gets a count of -1.
+ *
+ * With "binary" as well, an answer is the long id and the int count, then
+ * for each successor: the int red, white and kings masks, the long packed
+ * move, the byte next player and the byte draw counter. All values are big
+ * endian, as written by DataOutputStream.
+ *
+ * Usage:
+ *   java ModMain [init] [verbose] [fast] [service] [binary] [threads <n>]
+ *
+ * fast is accepted for the same command lines as Main, and does nothing.
+ */
 public class ModMain {
+	/**
+	 * The most requests taken into one task
+	 */
+	private static final int cBatchSize = 64;
+
+	/**
+	 * The longest request line: an id and a message
+	 */
+	private static final int cMaxRequestBytes = 20 + 1 + MessageCodec.cMaxMessageBytes;
 
 	/**
 	 * @param args
-	 * @throws IOException 
+	 * @throws IOException
 	 */
 	public static void main(String[] args) throws IOException {
-		
+
 		// Parse parameters
 		boolean init = false;
 		boolean verbose = false;
-		boolean fast = false;
-		
+		boolean service = false;
+		boolean binary = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+
 		for (int i = 0; i < args.length; ++i) {
 			String param = args[i];
-			
+
 			if (param.equals("init") || param.equals("i")) {
 				init = true;
 			} else if (param.equals("verbose") || param.equals("v")) {
 				verbose = true;
 			} else if (param.equals("fast") || param.equals("f")) {
-				fast = true;
+				// Accepted like Main's, but listing moves has no deadline
+			} else if (param.equals("service") || param.equals("s")) {
+				service = true;
+			} else if (param.equals("binary") || param.equals("b")) {
+				binary = true;
+			} else if ((param.equals("threads") || param.equals("t")) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
 			} else {
 				System.err.println("Unknown parameter: '" + args[i] + "'");
 				return;
 			}
 		}
-		
+
+		InputStream in = new BufferedInputStream(System.in, 1 << 16);
+		OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+
+		if (service) {
+			ModMain.serve(in, out, binary, threads);
+			return;
+		} // End if
+
+		MessageCodec codec = new MessageCodec();
+
 		/**
-		 * Start the game by sending the starting board without moves 
+		 * Start the game by sending the starting board without moves
 		 * if the parameter "init" is given
 		 */
 		if (init) {
-			String message = new GameState().toMessage();
-			System.err.println("Sending initial board: '" + message + "'");
-			System.out.println(message);
+			System.err.println("Sending initial board: '" + new GameState().toMessage() + "'");
+			codec.writeLine(new GameState(), out);
 		} // End if
 
-		String input_message;
-		BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-		while (true) {
-			input_message = null;
-			
-			// Poll until one line is read.
-			do {
-				try {
-					input_message = br.readLine();
-				} catch (Exception e) {
-					// Do nothing
-				}
-			} while(input_message == null);
-			
-			// Deadline is one second from when we receive the message
-			Deadline deadline = new Deadline(new Date(new Date().getTime() + (fast ? (long) 1e5 : (long) 1e6)));
+		GameState input_state = new GameState();
+		long[] moves = new long[GameState.cMaxMoves];
+		byte[] buffer = new byte[MessageCodec.cMaxMessageBytes + 1];
 
+		// Block on each line, and stop at the end of the input
+		while (codec.readLine(in) >= 0) {
 			// Get game state from standard input
-			//System.err.println("Receiving: '" + input_message + "'");
-			GameState input_state = new GameState(input_message);
-
-			// See if we would produce the same message
-			if (!input_state.toMessage().equals(input_message)) {
+			if (!codec.decode(input_state)) {
 				System.err.println("*** ERROR! ***");
-				System.err.println("Interpreted: '" + input_message + "'");
-				System.err.println("As:          '" + input_state.toMessage() + "'");
-				System.err.println(input_state.toString(input_state.getNextPlayer()));
-				assert(false);
+				System.err.println("Invalid message: '" + codec.lastLine() + "'");
+				ModMain.writeInt(-1, out);
+				out.flush();
+				continue;
 			} // End if
-			
+
 			// Print the input state
 			if (verbose) {
 				System.err.println(input_state.toString(input_state.getNextPlayer()));
 			} // End if
-			
+
 			// Quit if this is end of game
-			if (input_state.getMove().isEOG()) {
+			if (input_state.isEOG()) {
 				break;
 			} // End if
-			
-			// Figure out the next move
-	        Vector<GameState> output_states = new Vector<GameState>();
-	        input_state.findPossibleMoves(output_states);
-
-	        System.out.println(output_states.size());
-	        for (int i = 0; i < output_states.size(); i++) {
-	            System.out.println(output_states.get(i).toMessage());
-	        }
+
+			// Figure out the next moves
+			int count = input_state.findPossibleMoves(moves);
+			ModMain.writeInt(count, out);
+			for (int i = 0; i < count; i++) {
+				input_state.doMove(moves[i]);
+				int length = MessageCodec.encode(input_state, buffer, 0);
+				buffer[length++] = '\n';
+				out.write(buffer, 0, length);
+				input_state.undoMove();
+			}
+			out.flush();
 		}
 	}
+
+	/**
+	 * Answers requests until the end of the input
+	 *
+	 * @param pIn where the requests are read
+	 * @param pOut where the answers are written
+	 * @param pBinary true to answer in binary
+	 * @param pThreads the number of threads listing successors
+	 */
+	private static void serve(InputStream pIn, final OutputStream pOut, final boolean pBinary, int pThreads)
+			throws IOException {
+		// A full queue makes the reader help, which keeps memory bounded
+		ThreadPoolExecutor lPool = new ThreadPoolExecutor(pThreads, pThreads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(4 * pThreads), new ThreadPoolExecutor.CallerRunsPolicy());
+
+		boolean lEnd = false;
+		while (!lEnd) {
+			// Take the lines that are already waiting, blocking for the first
+			final Batch lBatch = new Batch();
+			do {
+				int lLength = MessageCodec.readLine(pIn, lBatch.mLines, lBatch.mCount * cMaxRequestBytes,
+						cMaxRequestBytes);
+				if (lLength < 0) {
+					lEnd = true;
+					break;
+				} // End if
+				lBatch.mLengths[lBatch.mCount++] = lLength;
+			} while (lBatch.mCount < cBatchSize && pIn.available() > 0);
+
+			if (lBatch.mCount > 0) {
+				lPool.execute(new Runnable() {
+					public void run() {
+						lBatch.answer(pOut, pBinary);
+					} // End run
+				});
+			} // End if
+		} // End while
+
+		lPool.shutdown();
+		try {
+			lPool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // End catch
+		pOut.flush();
+	} // End serve
+
+	/**
+	 * Requests answered by one task
+	 */
+	private static class Batch {
+		final byte[] mLines = new byte[cBatchSize * cMaxRequestBytes];
+		final int[] mLengths = new int[cBatchSize];
+		int mCount;
+
+		/**
+		 * Reused by the tasks run on each thread
+		 */
+		private static final ThreadLocal<Worker> cWorkers = new ThreadLocal<Worker>() {
+			protected Worker initialValue() {
+				return new Worker();
+			} // End initialValue
+		};
+
+		/**
+		 * Answers the requests, and writes the answers all at once
+		 */
+		void answer(OutputStream pOut, boolean pBinary) {
+			Worker lWorker = cWorkers.get();
+			lWorker.mAnswers.reset();
+			try {
+				for (int i = 0; i < this.mCount; i++) {
+					lWorker.answer(this.mLines, i * cMaxRequestBytes, this.mLengths[i], pBinary);
+				} // End for
+				synchronized (pOut) {
+					lWorker.mAnswers.writeTo(pOut);
+					pOut.flush();
+				} // End synchronized
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} // End catch
+		} // End answer
+	} // End class Batch
+
+	/**
+	 * What a thread needs to answer requests
+	 */
+	private static class Worker {
+		final GameState mState = new GameState();
+		final long[] mMoves = new long[GameState.cMaxMoves];
+		final byte[] mMessage = new byte[MessageCodec.cMaxMessageBytes];
+		final ByteArrayOutputStream mAnswers = new ByteArrayOutputStream(1 << 16);
+		final DataOutputStream mData = new DataOutputStream(this.mAnswers);
+
+		/**
+		 * Adds the answer to one request to mAnswers
+		 */
+		void answer(byte[] pLine, int pOffset, int pLength, boolean pBinary) throws IOException {
+			// The id, then the message
+			int lEnd = pOffset + pLength;
+			int i = pOffset;
+			long lId = 0;
+			while (i < lEnd && i - pOffset < 18 && pLine[i] >= '0' && pLine[i] <= '9') {
+				lId = lId * 10 + (pLine[i++] - '0');
+			} // End while
+			boolean lValid = i > pOffset && i < lEnd && pLine[i] == ' '
+					&& MessageCodec.decode(pLine, i + 1, lEnd - i - 1, this.mState);
+			if (i == pOffset) {
+				lId = -1;
+			} // End if
+
+			int lCount = lValid ? this.mState.findPossibleMoves(this.mMoves) : -1;
+			if (pBinary) {
+				this.mData.writeLong(lId);
+				this.mData.writeInt(lCount);
+			} else {
+				ModMain.writeLong(lId, this.mAnswers);
+				this.mAnswers.write(' ');
+				ModMain.writeInt(lCount, this.mAnswers);
+			} // End else
+
+			for (int n = 0; n < lCount; n++) {
+				this.mState.doMove(this.mMoves[n]);
+				if (pBinary) {
+					this.mData.writeInt(this.mState.getRed());
+					this.mData.writeInt(this.mState.getWhite());
+					this.mData.writeInt(this.mState.getKings());
+					this.mData.writeLong(this.mState.getPackedMove());
+					this.mData.writeByte(this.mState.getNextPlayer());
+					this.mData.writeByte(this.mState.getMovesUntilDraw());
+				} else {
+					int lLength = MessageCodec.encode(this.mState, this.mMessage, 0);
+					this.mAnswers.write(this.mMessage, 0, lLength);
+					this.mAnswers.write('\n');
+				} // End else
+				this.mState.undoMove();
+			} // End for
+		} // End answer
+	} // End class Worker
+
+	/**
+	 * Writes pValue in decimal followed by a new line
+	 */
+	private static void writeInt(int pValue, OutputStream pOut) throws IOException {
+		ModMain.writeLong(pValue, pOut);
+		pOut.write('\n');
+	} // End writeInt
+
+	/**
+	 * Writes pValue in decimal
+	 */
+	private static void writeLong(long pValue, OutputStream pOut) throws IOException {
+		if (pValue < 0) {
+			pOut.write('-');
+		} // End if
+		long lValue = Math.abs(pValue);
+		long lPower = 1;
+		while (lPower <= lValue / 10) {
+			lPower *= 10;
+		} // End while
+		for (; lPower > 0; lPower /= 10) {
+			pOut.write((int) ('0' + lValue / lPower % 10));
+		} // End for
+	} // End writeLong
 }
@@ -16,8 +16,47 @@ import java.util.Vector;
 public class Move {
 	static final String cDelimiter = "_";
 
-	private int mType;
-	private Vector<Integer> mData = new Vector<Integer>();
+	/**
+	 * A move can also be packed into a single long, which is the form the
+	 * move generator writes into its buffers.
+	 *
+	 * The lowest 4 bits hold the type (0 for a normal move, the number of
+	 * jumps for a jump) and each following group of 5 bits holds one square
+	 * (cell - 1), up to 12 squares. Special moves (BOG, end of game, NULL)
+	 * use cPackedSpecial as type and store their negated type where the
+	 * first square would be.
+	 */
+	static final int cPackedTypeBits = 4;
+	static final int cPackedSquareBits = 5;
+	static final int cPackedMaxSquares = 12;
+	static final int cPackedSpecial = 0xF;
+
+	/**
+	 * Moves are immutable, so the non-jump moves are shared. cSimple holds
+	 * every normal move between diagonal neighbours, indexed by the two
+	 * packed squares ((to - 1) << 5) | (from - 1), and cSpecial the special moves,
+	 * indexed by the negated type.
+	 */
+	private static final Move[] cSimple = new Move[32 * 32];
+	private static final Move[] cSpecial = new Move[1 - MoveType.MOVE_NULL.getInternalValue()];
+
+	static {
+		for (int i = 0; i < GameState.cSquares; i++) {
+			for (int d = 0; d < GameState.cDirections; d++) {
+				int lTo = GameState.cNeighbour[i * GameState.cDirections + d];
+				if (lTo != 0) {
+					cSimple[(Integer.numberOfTrailingZeros(lTo) << 5) | i]
+							= new Move(i + 1, Integer.numberOfTrailingZeros(lTo) + 1);
+				} // End if
+			} // End for
+		} // End for
+
+		for (int i = 1; i < cSpecial.length; i++) {
+			cSpecial[i] = new Move(Move.packSpecial(-i));
+		} // End for
+	} // End static
+
+	private final long mPacked;	// see pack()
 
 	/**
 	 * constructs a special type move
@@ -27,7 +66,8 @@ public class Move {
 	 * @return
 	 */
 	public Move(MoveType pType) {
-		this.mType = pType.getInternalValue();
+		int lType = pType.getInternalValue();
+		this.mPacked = (lType < 0) ? Move.packSpecial(lType) : lType;
 	} // End constructor Move
 
 	/**
@@ -46,12 +86,7 @@ public class Move {
 	 *            the destination square
 	 */
 	public Move(int p1, int p2) {
-		this(MoveType.MOVE_NORMAL);
-
-		assert (this.mData.size() == 0);
-
-		this.mData.add(p1);
-		this.mData.add(p2);
+		this.mPacked = Move.packNormal(p1, p2);
 	} // End constructor Move
 
 	/**
@@ -61,13 +96,45 @@ public class Move {
 	 *            a series of squares that form the sequence of jumps
 	 */
 	public Move(Vector<Integer> pData, int len) {
-		this.mType = len - 1;
-        this.mData.setSize(0);
+		long lPacked = len - 1;
         for (int i = 0; i < len; i++) {
-            this.mData.add(pData.get(i));
+            lPacked |= (long) (pData.get(i) - 1) << (cPackedTypeBits + i * cPackedSquareBits);
         }
+        this.mPacked = lPacked;
+	} // End constructor Move
+
+	/**
+	 * Wraps a move produced by the move generator
+	 *
+	 * Prefer valueOf(), which doesn't allocate for non-jump moves.
+	 *
+	 * @param pPacked a move in the packed long form
+	 */
+	public Move(long pPacked) {
+		this.mPacked = pPacked;
 	} // End constructor Move
 
+	/**
+	 * @param pPacked a move in the packed long form
+	 * @return a Move for pPacked, shared unless it is a jump
+	 */
+	public static Move valueOf(long pPacked) {
+		int lType = (int) pPacked & cPackedSpecial;
+
+		if (lType == MoveType.MOVE_NORMAL.getInternalValue()) {
+			Move lMove = cSimple[(int) (pPacked >>> cPackedTypeBits) & 0x3FF];
+			if (lMove != null && lMove.mPacked == pPacked) {
+				return lMove;
+			} // End if
+		} else if (lType == cPackedSpecial) {
+			int lIndex = -Move.packedType(pPacked);
+			if (lIndex > 0 && lIndex < cSpecial.length && cSpecial[lIndex].mPacked == pPacked) {
+				return cSpecial[lIndex];
+			} // End if
+		} // End else
+		return new Move(pPacked);
+	} // End valueOf
+
 	/**
 	 * reconstructs the move from a string
 	 * 
@@ -75,25 +142,38 @@ public class Move {
 	 *        generated by ToMessage(), or obtained from the server.
 	 */
 	public Move(final String pString) {
+		this.mPacked = Move.parse(pString);
+	} // End constructor Move
+
+	/**
+	 * @return the packed form of a move string, or of a MOVE_NULL move if
+	 *   the string is not valid
+	 */
+	private static long parse(final String pString) {
+		final long lNull = Move.packSpecial(MoveType.MOVE_NULL.getInternalValue());
+
 		StringTokenizer st = new StringTokenizer(pString, Move.cDelimiter);
 		String str = st.nextToken();
 
-		this.mType = Integer.parseInt(str);
+		int lType = Integer.parseInt(str);
 
 		int lLen = 0;
 
-		if (mType == MoveType.MOVE_NORMAL.getInternalValue()) {
+		if (lType == MoveType.MOVE_NORMAL.getInternalValue()) {
 			lLen = 2;
-		} else if (mType > 0) {
-			lLen = mType + 1;
+		} else if (lType > 0) {
+			lLen = lType + 1;
 		} // End if
 
-		if (lLen > 12 || mType < MoveType.MOVE_NULL.getInternalValue()) {
-			mType = MoveType.MOVE_NULL.getInternalValue();
-			return;
+		if (lLen > cPackedMaxSquares || lType < MoveType.MOVE_NULL.getInternalValue()) {
+			return lNull;
 		} // End if
 
-		this.mData.setSize(lLen);
+		if (lLen == 0) {
+			return st.hasMoreTokens() ? lNull : Move.packSpecial(lType);
+		} // End if
+
+		long lPacked = lType;
 
 		for (int i = 0; i < lLen; i++) {
 			int lCell;
@@ -102,183 +182,245 @@ public class Move {
 			lCell = Integer.parseInt(str);
 
 			if (lCell < 1 || lCell > 32) {
-				this.mType = MoveType.MOVE_NULL.getInternalValue();
-				break;
+				return lNull;
 			} // End if
 
-			this.mData.set(i, lCell);
+			lPacked |= (long) (lCell - 1) << (cPackedTypeBits + i * cPackedSquareBits);
 		} // End for
 
 		if (st.hasMoreTokens()) {
-			this.mType = MoveType.MOVE_NULL.getInternalValue();
+			return lNull;
 		} // End if
-	} // End constructor Move
+		return lPacked;
+	} // End parse
 
 	/**
 	 * @return A reverse version of this move
 	 */
 	Move reversed() {
-		Move result = this;
+		// Moves are shared, so never change this one
+		return Move.valueOf(Move.reversed(this.mPacked));
+	} // End reversed
 
-		if (this.isRedWin()) {
-			result.mType = MoveType.MOVE_WW.getInternalValue();
-		} else if (this.isWhiteWin()) {
-			result.mType = MoveType.MOVE_RW.getInternalValue();
+	/**
+	 * @return the packed move pPacked on the board rotated 180 degrees with
+	 *   colours swapped (see GameState.reversed())
+	 */
+	static long reversed(long pPacked) {
+		int lType = Move.packedType(pPacked);
+		if (lType == MoveType.MOVE_RW.getInternalValue()) {
+			return Move.packSpecial(MoveType.MOVE_WW.getInternalValue());
+		} else if (lType == MoveType.MOVE_WW.getInternalValue()) {
+			return Move.packSpecial(MoveType.MOVE_RW.getInternalValue());
 		} // End else
 
-		for (int i = 0; i < this.mData.size(); i++) {
-			result.mData.set(i, 33 - this.mData.elementAt(i));
+		// Cell c becomes 33 - c, i.e. every 5 bit square index i becomes 31 - i
+		long lPacked = pPacked;
+		int lLength = Move.packedLength(pPacked);
+		for (int i = 0; i < lLength; i++) {
+			lPacked ^= 31L << (cPackedTypeBits + i * cPackedSquareBits);
 		} // End for
-		return result;
+		return lPacked;
 	} // End reversed
 
 	/**
 	 * @return true if the movement is null or invalid
 	 */
 	boolean isNull() {
-		return (this.mType == MoveType.MOVE_NULL.getInternalValue());
+		return (this.getType() == MoveType.MOVE_NULL.getInternalValue());
 	} // End isNull
 
 	/**
 	 * @return true if the movement marks beginning of game
 	 */
 	boolean isBOG() {
-		return (this.mType == MoveType.MOVE_BOG.getInternalValue());
+		return (this.getType() == MoveType.MOVE_BOG.getInternalValue());
 	} // End isBOG
 
 	/**
 	 * @return true if the movement marks end of game
 	 */
 	public boolean isEOG() {
-		return (this.mType < MoveType.MOVE_BOG.getInternalValue());
+		return (this.getType() < MoveType.MOVE_BOG.getInternalValue());
 	} // End isEOG
 
 	/**
 	 * @return true if the game ended in red win
 	 */
 	public boolean isRedWin() {
-		return (this.mType == MoveType.MOVE_RW.getInternalValue());
+		return (this.getType() == MoveType.MOVE_RW.getInternalValue());
 	} // End isRedWin
 
 	/**
 	 * @return true if the game ended in white win
 	 */
 	public boolean isWhiteWin() {
-		return (this.mType == MoveType.MOVE_WW.getInternalValue());
+		return (this.getType() == MoveType.MOVE_WW.getInternalValue());
 	} // End isWhiteWin
 
 	/**
 	 * @return true if the game ended in draw
 	 */
 	public boolean isDraw() {
-		return (this.mType == MoveType.MOVE_DRAW.getInternalValue());
+		return (this.getType() == MoveType.MOVE_DRAW.getInternalValue());
 	} // End isDraw
 
 	/**
 	 * @return true if the movement is a jump
 	 */
 	public boolean isJump() {
-		return (this.mType > 0);
+		return (this.getType() > 0);
 	} // End isJump
 
 	/**
 	 * @returns true if the movement is a normal move
 	 */
 	public boolean isNormal() {
-		return (this.mType == MoveType.MOVE_NORMAL.getInternalValue());
+		return (this.getType() == MoveType.MOVE_NORMAL.getInternalValue());
 	} // End isNormal
 
 	/**
 	 * @returns the type of the move
 	 */
 	public int getType() {
-		return this.mType;
+		return Move.packedType(this.mPacked);
 	} // End getType
 
 	/**
 	 * @return (for normal moves and jumps) the number of squares
 	 */
 	public int length() {
-		return this.mData.size();
+		return Move.packedLength(this.mPacked);
 	} // End length
 
 	/**
 	 * @return the pN-th square in the sequence
 	 */
 	public int at(int pN) {
-		return this.mData.elementAt(pN);
+		assert (pN >= 0 && pN < this.length());
+		return Move.packedAt(this.mPacked, pN);
 	} // End at
 
+	/**
+	 * @return this move in the packed long form
+	 */
+	public long pack() {
+		return this.mPacked;
+	} // End pack
+
+	/**
+	 * @param pFrom the source cell
+	 * @param pTo the destination cell
+	 * @return the packed form of a normal move
+	 */
+	static long packNormal(int pFrom, int pTo) {
+		return ((long) (pFrom - 1) << cPackedTypeBits)
+				| ((long) (pTo - 1) << (cPackedTypeBits + cPackedSquareBits));
+	} // End packNormal
+
+	/**
+	 * @param pType one of the negative (special) move types
+	 * @return the packed form of a special move
+	 */
+	static long packSpecial(int pType) {
+		return cPackedSpecial | ((long) -pType << cPackedTypeBits);
+	} // End packSpecial
+
+	/**
+	 * @return the type of a packed move, as returned by getType()
+	 */
+	static int packedType(long pPacked) {
+		int lType = (int) pPacked & cPackedSpecial;
+		if (lType == cPackedSpecial) {
+			return -(int) ((pPacked >>> cPackedTypeBits) & cPackedSpecial);
+		} // End if
+		return lType;
+	} // End packedType
+
+	/**
+	 * @return the number of squares of a packed move, as returned by length()
+	 */
+	static int packedLength(long pPacked) {
+		int lType = Move.packedType(pPacked);
+		if (lType == MoveType.MOVE_NORMAL.getInternalValue()) {
+			return 2;
+		} // End if
+		return (lType > 0) ? lType + 1 : 0;
+	} // End packedLength
+
+	/**
+	 * @return the pN-th cell of a packed move, as returned by at()
+	 */
+	static int packedAt(long pPacked, int pN) {
+		return (int) ((pPacked >>> (cPackedTypeBits + pN * cPackedSquareBits)) & 31) + 1;
+	} // End packedAt
+
 	/**
 	 * converts the move to a string so that it can be sent to the other player
 	 */
 	public String toMessage() {
-		String lStream = new String();
-		lStream = lStream + mType;
+		StringBuilder lStream = new StringBuilder(40);
+		lStream.append(this.getType());
 
-		for (int i = 0; i < this.mData.size(); i++) {
-			lStream = lStream + cDelimiter + this.mData.elementAt(i);
+		for (int i = 0; i < this.length(); i++) {
+			lStream.append(cDelimiter).append(this.at(i));
 		} // End for
 
-		return lStream;
+		return lStream.toString();
 	} // End toMessage
 
 	/**
 	 * converts the move to a human readable string so that it can be printed
 	 */
 	public String toString() {
-		if (this.mType == MoveType.MOVE_WW.getInternalValue()) {
+		if (this.getType() == MoveType.MOVE_WW.getInternalValue()) {
 			return "WW";
 		} // End if
-		if (this.mType == MoveType.MOVE_RW.getInternalValue()) {
+		if (this.getType() == MoveType.MOVE_RW.getInternalValue()) {
 			return "RW";
 		} // End if
-		if (this.mType == MoveType.MOVE_DRAW.getInternalValue()) {
+		if (this.getType() == MoveType.MOVE_DRAW.getInternalValue()) {
 			return "DRAW";
 		} // End if
-		if (this.mType == MoveType.MOVE_BOG.getInternalValue()) {
+		if (this.getType() == MoveType.MOVE_BOG.getInternalValue()) {
 			return "BOG";
 		} // End if
 		if (this.isNull()) {
 			return "NULL";
 		} // End if
 
-		String lStream = new String();
-		String delimiter = isNormal() ? "-" : "x";
+		StringBuilder lStream = new StringBuilder(40);
+		char delimiter = isNormal() ? '-' : 'x';
 
-		assert (this.mData.size() > 0);
+		assert (this.length() > 0);
 
 		// Concatenate all the cell numbers
-		lStream = lStream + this.mData.elementAt(0);
+		lStream.append(this.at(0));
 
-		for (int i = 1; i < this.mData.size(); i++) {
-			lStream = lStream + delimiter + this.mData.elementAt(i);
+		for (int i = 1; i < this.length(); i++) {
+			lStream.append(delimiter).append(this.at(i));
 		} // End for
 
-		return lStream;
+		return lStream.toString();
 	}
 
 	/**
 	 * @return true if the two objects represent the same move
 	 */
 	public boolean equals(final Move pRH) {
-		if (this.mType != pRH.mType) {
-			return false;
-		} // End if
-
-		if (this.mData.size() != pRH.mData.size()) {
-			return false;
-		} // End if
-
-		for (int i = 0; i < this.mData.size(); i++) {
-			if (this.mData.elementAt(i) != pRH.mData.elementAt(i)) {
-				return false;
-			} // End if
-		} // End for
+		return this.mPacked == pRH.mPacked;
+	} // End equals
 
-		return true;
+	@Override
+	public boolean equals(Object pRH) {
+		return (pRH instanceof Move) && this.equals((Move) pRH);
 	} // End equals
 
+	@Override
+	public int hashCode() {
+		return Long.hashCode(this.mPacked);
+	} // End hashCode
+
 	/**
 	 * Encapsulated type for moves.
 	 * 
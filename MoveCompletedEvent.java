@@ -0,0 +1,58 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for each move Player chooses. Its duration
+ * is the time the choice took.
+ */
+@Name("checkers.MoveCompleted")
+@Label("Move Completed")
+@Category("Checkers")
+@Description("A move chosen by the player")
+public class MoveCompletedEvent extends jdk.jfr.Event {
+	@Label("Source")
+	@Description("search, book or forced")
+	String source;
+
+	@Label("Move")
+	String move;
+
+	@Label("Depth")
+	@Description("Of the iteration that chose the move")
+	int depth;
+
+	@Label("Score")
+	@Description("For the player who moves")
+	int score;
+
+	@Label("Nodes")
+	@Description("Searched by all threads")
+	long nodes;
+
+	@Label("Nodes per Second")
+	long nodesPerSecond;
+
+	@Label("Branching Factor")
+	@Description("Nodes of the last iteration over those of the one before")
+	double branchingFactor;
+
+	@Label("Table Hit Rate")
+	@Description("Share of table probes that found an entry")
+	double tableHitRate;
+
+	@Label("Allocated Time")
+	@Description("The hard limit set by TimeManager")
+	@Timespan(Timespan.NANOSECONDS)
+	long allocated;
+
+	@Label("Deadline Margin")
+	@Description("Time left before the deadline when the move was chosen")
+	@Timespan(Timespan.NANOSECONDS)
+	long margin;
+
+	@Label("Threads")
+	int threads;
+} // End class MoveCompletedEvent
@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Orders the moves of a search node so that the best one is likely tried
+ * first, which is when alpha-beta cuts the most
+ *
+ * The best move from the transposition table goes first (see toFront()).
+ * It often cuts on its own, so the other moves are only ranked after it
+ * has been searched, by:
+ * - the killer moves: the last two normal moves that caused a cut at the
+ *   same ply, in other positions
+ * - the counter move: the normal move that last cut after the move the
+ *   opponent just made
+ * - jumps by the number of pieces they capture
+ * - the history score of the move's source and destination squares, which
+ *   grows with every cut the move causes, the more the deeper the cut
+ *
+ * The tables are indexed by the source and destination squares of packed
+ * moves, (from << 5) | to, and by the player to move. Each Searcher has its
+ * own MoveOrdering, so no locking is needed.
+ */
+public class MoveOrdering {
+	private static final int cKillerScore = 1 << 29;	// the second killer scores one less
+	private static final int cCounterScore = 1 << 28;
+	private static final int cJumpScore = 1 << 24;		// per captured piece
+
+	/**
+	 * History scores are halved when one reaches this, and for each new
+	 * search, so they stay below cJumpScore and favour recent cuts
+	 */
+	private static final int cHistoryMax = 1 << 20;
+
+	private static final int cSquarePairs = GameState.cSquares * GameState.cSquares;
+
+	private final long[][] mKillers;
+	private final int[] mHistory = new int[2 * cSquarePairs];
+	private final long[] mCounters = new long[2 * cSquarePairs];
+	private final int[] mScores = new int[GameState.cMaxMoves];
+
+	/**
+	 * @param pPlies the deepest ply that will be ordered
+	 */
+	MoveOrdering(int pPlies) {
+		this.mKillers = new long[pPlies + 1][2];
+	} // End constructor MoveOrdering
+
+	/**
+	 * Prepares for a new search: forgets the killers and counter moves,
+	 * and halves the history scores
+	 */
+	void age() {
+		for (long[] lKillers : this.mKillers) {
+			lKillers[0] = TranspositionTable.cNoMove;
+			lKillers[1] = TranspositionTable.cNoMove;
+		} // End for
+		Arrays.fill(this.mCounters, TranspositionTable.cNoMove);
+		this.halveHistory();
+	} // End age
+
+	/**
+	 * Moves pMove (usually the best move from the table) to the front of
+	 * pMoves, if it is there
+	 *
+	 * @return the number of moves put in front: 1 if pMove was found, else 0
+	 */
+	static int toFront(long[] pMoves, int pCount, long pMove) {
+		for (int i = 0; i < pCount; i++) {
+			if (pMoves[i] == pMove) {
+				System.arraycopy(pMoves, 0, pMoves, 1, i);
+				pMoves[0] = pMove;
+				return 1;
+			} // End if
+		} // End for
+		return 0;
+	} // End toFront
+
+	/**
+	 * Sorts the moves of a node that haven't been searched yet, best first
+	 *
+	 * @param pMoves the moves, as found by GameState
+	 * @param pFrom the first move to sort
+	 * @param pCount the number of moves
+	 * @param pPly the ply of the node
+	 * @param pState the position of the node
+	 */
+	void order(long[] pMoves, int pFrom, int pCount, int pPly, GameState pState) {
+		if (pCount - pFrom < 2) {
+			return;
+		} // End if
+
+		int lSide = MoveOrdering.side(pState);
+		long lKiller0 = this.mKillers[pPly][0];
+		long lKiller1 = this.mKillers[pPly][1];
+		long lCounter = this.mCounters[lSide + MoveOrdering.squares(pState.getPackedMove())];
+		int[] lScores = this.mScores;
+
+		for (int i = pFrom; i < pCount; i++) {
+			long lMove = pMoves[i];
+			int lScore;
+			if (lMove == lKiller0) {
+				lScore = cKillerScore;
+			} else if (lMove == lKiller1) {
+				lScore = cKillerScore - 1;
+			} else if (lMove == lCounter) {
+				lScore = cCounterScore;
+			} else {
+				lScore = Math.max(Move.packedType(lMove), 0) * cJumpScore
+						+ this.mHistory[lSide + MoveOrdering.squares(lMove)];
+			} // End else
+			lScores[i] = lScore;
+		} // End for
+
+		// Insertion sort: there are few moves, and they are often nearly in order
+		for (int i = pFrom + 1; i < pCount; i++) {
+			long lMove = pMoves[i];
+			int lScore = lScores[i];
+			int j = i - 1;
+			for (; j >= pFrom && lScores[j] < lScore; j--) {
+				pMoves[j + 1] = pMoves[j];
+				lScores[j + 1] = lScores[j];
+			} // End for
+			pMoves[j + 1] = lMove;
+			lScores[j + 1] = lScore;
+		} // End for
+	} // End order
+
+	/**
+	 * Learns from a move that caused a cut
+	 *
+	 * @param pMove the move
+	 * @param pPly the ply of the node
+	 * @param pDepth the remaining depth of the node
+	 * @param pState the position of the node, before pMove
+	 */
+	void cutoff(long pMove, int pPly, int pDepth, GameState pState) {
+		int lSide = MoveOrdering.side(pState);
+		int lIndex = lSide + MoveOrdering.squares(pMove);
+		this.mHistory[lIndex] += pDepth * pDepth;
+		if (this.mHistory[lIndex] >= cHistoryMax) {
+			this.halveHistory();
+		} // End if
+
+		// Jumps are forced, so they can't be compared with other positions' moves
+		if (Move.packedType(pMove) != Move.MoveType.MOVE_NORMAL.getInternalValue()) {
+			return;
+		} // End if
+		long[] lKillers = this.mKillers[pPly];
+		if (lKillers[0] != pMove) {
+			lKillers[1] = lKillers[0];
+			lKillers[0] = pMove;
+		} // End if
+		this.mCounters[lSide + MoveOrdering.squares(pState.getPackedMove())] = pMove;
+	} // End cutoff
+
+	private void halveHistory() {
+		for (int i = 0; i < this.mHistory.length; i++) {
+			this.mHistory[i] >>= 1;
+		} // End for
+	} // End halveHistory
+
+	/**
+	 * @return the offset of the tables of the player to move in pState
+	 */
+	private static int side(GameState pState) {
+		return (pState.getNextPlayer() == Constants.CELL_WHITE) ? cSquarePairs : 0;
+	} // End side
+
+	/**
+	 * @return (from << 5) | to of a packed move, with squares from 0, or 0
+	 *   for a special move
+	 */
+	private static int squares(long pPacked) {
+		int lType = (int) pPacked & Move.cPackedSpecial;
+		if (lType == Move.MoveType.MOVE_NORMAL.getInternalValue()) {
+			// From and to are the two squares after the type
+			int lSquares = (int) (pPacked >>> Move.cPackedTypeBits);
+			return ((lSquares & 31) << 5) | ((lSquares >>> Move.cPackedSquareBits) & 31);
+		} else if (lType == Move.cPackedSpecial) {
+			return 0;
+		} // End else
+		int lFrom = (int) (pPacked >>> Move.cPackedTypeBits) & 31;
+		int lTo = (int) (pPacked >>> (Move.cPackedTypeBits + lType * Move.cPackedSquareBits)) & 31;
+		return (lFrom << 5) | lTo;
+	} // End squares
+} // End class MoveOrdering
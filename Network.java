@@ -0,0 +1,280 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * A small quantised neural network evaluation (NNUE style), trained by
+ * NetworkTrainer
+ *
+ * The inputs are one per piece kind and square, indexed like
+ * GameState.cZobrist by (kind << 5) | square. The first layer is computed
+ * for both players' points of view: red's uses the indices as they are,
+ * white's the indices of the reversed board (index ^ cMirrorIndex), where
+ * white's pieces are the own pieces. Its outputs, the accumulators, are
+ * sums of one weight column per piece, so a move only adds and subtracts
+ * the columns of the few pieces it moves, captures or promotes (see Stack).
+ *
+ * The rest of the network runs at the leaves:
+ *   accumulators of the player to move, then of the other player, clipped to [0, 1]
+ *   -> cSecond neurons, clipped to [0, 1]
+ *   -> the score, in the units of Evaluator
+ *
+ * Weights are integers. The first layer is scaled by cScaleA and the
+ * others by cScaleB, so all of the arithmetic is on ints in plain loops
+ * over arrays, which the JIT can compile to SIMD instructions.
+ *
+ * The file format (big endian, as written by DataOutputStream):
+ *   int   cMagic ("CKNN")
+ *   int   cVersion
+ *   int   number of first layer neurons (H)
+ *   int   number of second layer neurons (cSecond)
+ *   short first layer weights [128][H], by input
+ *   short first layer biases [H]
+ *   byte  second layer weights [cSecond][2 * H], by neuron
+ *   int   second layer biases [cSecond]
+ *   short output weights [cSecond]
+ *   int   output bias
+ */
+public class Network {
+	static final int cMagic = 0x434B4E4E;	// "CKNN"
+	static final int cVersion = 1;
+	static final int cInputs = 4 * GameState.cSquares;
+	static final int cSecond = 16;
+
+	/**
+	 * Scales of the quantised weights. Clipped activations are integers
+	 * in [0, cScaleA].
+	 */
+	static final int cScaleA = 127;
+	static final int cScaleB = 64;
+
+	/**
+	 * A network output of 1 is this many points of Evaluator
+	 */
+	static final int cOutputScale = 100;
+
+	private final int mHidden;
+	private final short[] mWeights1;	// [input * mHidden + neuron]
+	private final short[] mBiases1;
+	private final int[] mWeights2;		// [input * cSecond + neuron], transposed and widened
+	private final int[] mBiases2;
+	private final short[] mWeights3;
+	private final int mBias3;
+
+	/**
+	 * Reads a network written by NetworkTrainer
+	 *
+	 * @throws IOException if the file can't be read or isn't a network
+	 */
+	Network(File pFile) throws IOException {
+		try (DataInputStream lIn = new DataInputStream(new BufferedInputStream(new FileInputStream(pFile)))) {
+			if (lIn.readInt() != cMagic || lIn.readInt() != cVersion) {
+				throw new IOException(pFile + " is not a network of version " + cVersion);
+			} // End if
+			this.mHidden = lIn.readInt();
+			if (this.mHidden <= 0 || this.mHidden > 1024 || lIn.readInt() != cSecond) {
+				throw new IOException(pFile + " has unsupported layer sizes");
+			} // End if
+
+			this.mWeights1 = new short[cInputs * this.mHidden];
+			for (int i = 0; i < this.mWeights1.length; i++) {
+				this.mWeights1[i] = lIn.readShort();
+			} // End for
+			this.mBiases1 = new short[this.mHidden];
+			for (int i = 0; i < this.mHidden; i++) {
+				this.mBiases1[i] = lIn.readShort();
+			} // End for
+			this.mWeights2 = new int[cSecond * 2 * this.mHidden];
+			for (int n = 0; n < cSecond; n++) {
+				for (int i = 0; i < 2 * this.mHidden; i++) {
+					this.mWeights2[i * cSecond + n] = lIn.readByte();
+				} // End for
+			} // End for
+			this.mBiases2 = new int[cSecond];
+			for (int i = 0; i < cSecond; i++) {
+				this.mBiases2[i] = lIn.readInt();
+			} // End for
+			this.mWeights3 = new short[cSecond];
+			for (int i = 0; i < cSecond; i++) {
+				this.mWeights3[i] = lIn.readShort();
+			} // End for
+			this.mBias3 = lIn.readInt();
+		} // End try
+	} // End constructor Network
+
+	/**
+	 * @return the number of first layer neurons
+	 */
+	int getHidden() {
+		return this.mHidden;
+	} // End getHidden
+
+	/**
+	 * Computes the accumulators of a position from scratch
+	 *
+	 * @param pAccumulator red's accumulator, then white's
+	 */
+	void refresh(int pRed, int pWhite, int pKings, short[] pAccumulator) {
+		int lHidden = this.mHidden;
+		System.arraycopy(this.mBiases1, 0, pAccumulator, 0, lHidden);
+		System.arraycopy(this.mBiases1, 0, pAccumulator, lHidden, lHidden);
+		this.addAll(pRed & ~pKings, 0, pAccumulator, 1);
+		this.addAll(pWhite & ~pKings, 1, pAccumulator, 1);
+		this.addAll(pRed & pKings, 2, pAccumulator, 1);
+		this.addAll(pWhite & pKings, 3, pAccumulator, 1);
+	} // End refresh
+
+	/**
+	 * Updates accumulators for a change of position
+	 *
+	 * @param pFrom the red, white and kings bitboards before
+	 * @param pFromAccumulator the accumulators before
+	 * @param pTo the bitboards after
+	 * @param pToAccumulator where to write the accumulators after
+	 */
+	void update(int[] pFrom, short[] pFromAccumulator, int[] pTo, short[] pToAccumulator) {
+		System.arraycopy(pFromAccumulator, 0, pToAccumulator, 0, 2 * this.mHidden);
+		for (int lKind = 0; lKind < 4; lKind++) {
+			int lBefore = Network.kind(pFrom, lKind);
+			int lAfter = Network.kind(pTo, lKind);
+			this.addAll(lBefore & ~lAfter, lKind, pToAccumulator, -1);
+			this.addAll(lAfter & ~lBefore, lKind, pToAccumulator, 1);
+		} // End for
+	} // End update
+
+	/**
+	 * @param pBoards the red, white and kings bitboards
+	 * @return the squares holding pieces of pKind (see GameState.cZobrist)
+	 */
+	private static int kind(int[] pBoards, int pKind) {
+		int lColour = ((pKind & 1) == 0) ? pBoards[0] : pBoards[1];
+		return ((pKind & 2) == 0) ? lColour & ~pBoards[2] : lColour & pBoards[2];
+	} // End kind
+
+	/**
+	 * Adds (pSign 1) or subtracts (pSign -1) the weights of the pieces of
+	 * kind pKind on pSquares to both accumulators
+	 */
+	private void addAll(int pSquares, int pKind, short[] pAccumulator, int pSign) {
+		int lHidden = this.mHidden;
+		for (int lLeft = pSquares; lLeft != 0; lLeft &= lLeft - 1) {
+			int lIndex = (pKind << 5) | Integer.numberOfTrailingZeros(lLeft);
+			int lRed = lIndex * lHidden;
+			int lWhite = (lIndex ^ GameState.cMirrorIndex) * lHidden;
+			for (int i = 0; i < lHidden; i++) {
+				pAccumulator[i] += pSign * this.mWeights1[lRed + i];
+				pAccumulator[lHidden + i] += pSign * this.mWeights1[lWhite + i];
+			} // End for
+		} // End for
+	} // End addAll
+
+	/**
+	 * Runs the layers after the accumulators
+	 *
+	 * Each input adds its weighted value to all cSecond sums at once. Many
+	 * accumulators clip to 0, and those are skipped.
+	 *
+	 * @param pAccumulator red's accumulator, then white's
+	 * @param pNextPlayer the player to move
+	 * @param pSums work space of cSecond ints
+	 * @return the score for the player to move, in the units of Evaluator
+	 */
+	int evaluate(short[] pAccumulator, int pNextPlayer, int[] pSums) {
+		int lHidden = this.mHidden;
+		int lOwn = (pNextPlayer == Constants.CELL_RED) ? 0 : lHidden;
+
+		// The player to move's accumulator comes first
+		System.arraycopy(this.mBiases2, 0, pSums, 0, cSecond);
+		this.accumulate(pAccumulator, lOwn, 0, pSums);
+		this.accumulate(pAccumulator, lHidden - lOwn, lHidden, pSums);
+
+		long lOutput = this.mBias3;
+		for (int n = 0; n < cSecond; n++) {
+			int lNeuron = Math.min(Math.max(pSums[n] / cScaleB, 0), cScaleA);
+			lOutput += lNeuron * this.mWeights3[n];
+		} // End for
+		return (int) (lOutput * cOutputScale / (cScaleA * cScaleB));
+	} // End evaluate
+
+	/**
+	 * Adds the weighted, clipped values of one accumulator to the sums
+	 *
+	 * @param pOffset where the accumulator starts in pAccumulator
+	 * @param pInput the second layer input of its first value
+	 */
+	private void accumulate(short[] pAccumulator, int pOffset, int pInput, int[] pSums) {
+		for (int i = 0; i < this.mHidden; i++) {
+			int lValue = Math.min(pAccumulator[pOffset + i], cScaleA);
+			if (lValue <= 0) {
+				continue;
+			} // End if
+			int lWeights = (pInput + i) * cSecond;
+			for (int n = 0; n < cSecond; n++) {
+				pSums[n] += lValue * this.mWeights2[lWeights + n];
+			} // End for
+		} // End for
+	} // End accumulate
+
+	/**
+	 * The accumulators along the line a search is on, one set per ply
+	 *
+	 * The search reports the position after each move with moved(). The
+	 * accumulators are only brought up to date when a position is
+	 * evaluated, so moves into positions that are never evaluated (cut by
+	 * the table or the tablebase) cost no more than copying three ints.
+	 */
+	class Stack {
+		private final short[][] mAccumulators;
+		private final int[][] mBoards;
+		private final int[] mSums = new int[cSecond];
+		private int mValid;		// accumulators are up to date up to this ply
+
+		/**
+		 * @param pPlies the deepest ply that will be reported
+		 */
+		Stack(int pPlies) {
+			this.mAccumulators = new short[pPlies + 1][2 * Network.this.mHidden];
+			this.mBoards = new int[pPlies + 1][3];
+		} // End constructor Stack
+
+		/**
+		 * Starts from the position at ply 0
+		 */
+		void reset(GameState pState) {
+			this.store(0, pState);
+			int[] lBoards = this.mBoards[0];
+			Network.this.refresh(lBoards[0], lBoards[1], lBoards[2], this.mAccumulators[0]);
+			this.mValid = 0;
+		} // End reset
+
+		/**
+		 * Reports a move
+		 *
+		 * @param pPly the ply of pState, the position after the move
+		 */
+		void moved(int pPly, GameState pState) {
+			this.store(pPly, pState);
+			this.mValid = Math.min(this.mValid, pPly - 1);
+		} // End moved
+
+		/**
+		 * @return the score of pState, the position at pPly, for the player to move
+		 */
+		int evaluate(int pPly, GameState pState) {
+			for (; this.mValid < pPly; this.mValid++) {
+				Network.this.update(this.mBoards[this.mValid], this.mAccumulators[this.mValid],
+						this.mBoards[this.mValid + 1], this.mAccumulators[this.mValid + 1]);
+			} // End for
+			return Network.this.evaluate(this.mAccumulators[pPly], pState.getNextPlayer(), this.mSums);
+		} // End evaluate
+
+		private void store(int pPly, GameState pState) {
+			int[] lBoards = this.mBoards[pPly];
+			lBoards[0] = pState.getRed();
+			lBoards[1] = pState.getWhite();
+			lBoards[2] = pState.getKings();
+		} // End store
+	} // End class Stack
+} // End class Network
@@ -0,0 +1,430 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Trains the network of Network on the records written by SelfPlay
+ *
+ * The network is trained in floating point, then quantised and written in
+ * the format read by Network. Its output y is compared with the records
+ * through a sigmoid, on the scale of cScoreScale points of Evaluator:
+ *   prediction = sigmoid(y * Network.cOutputScale / cScoreScale)
+ *   target     = lambda * sigmoid(score / cScoreScale) + (1 - lambda) * result
+ * where result is 1 for a win, 0.5 for a draw and 0 for a loss, for the
+ * player to move. The loss is the mean squared difference, minimised with
+ * Adam over mini-batches. The last cValidationShare of the records are
+ * kept out of training to measure the loss on.
+ *
+ * Usage:
+ *   java NetworkTrainer <file>... [epochs <n>] [hidden <n>] [batch <n>] [rate <r>]
+ *       [lambda <l>] [seed <n>] [out <file>]
+ *
+ * - epochs is the number of passes over the records (default 10)
+ * - hidden is the number of first layer neurons (default 64)
+ * - batch is the mini-batch size (default 256)
+ * - rate is the learning rate (default 0.001)
+ * - lambda weighs the search score against the result (default 0.7)
+ * - the default output file is eval.nnue, which is where Player looks for it
+ */
+public class NetworkTrainer {
+	private static final double cScoreScale = 200;
+	private static final double cValidationShare = 0.05;
+
+	/**
+	 * Limits on the float weights, so that their quantised values fit
+	 * their types and accumulators of 24 pieces fit in a short
+	 */
+	private static final float cMaxWeight1 = 32767f / (Network.cScaleA * (2 * GameState.cPlayerPieces + 1));
+	private static final float cMaxWeight2 = 127f / Network.cScaleB;
+
+	private static final double cBeta1 = 0.9;
+	private static final double cBeta2 = 0.999;
+	private static final double cEpsilon = 1e-8;
+
+	private final int mHidden;
+	private final double mRate;
+	private final double mLambda;
+
+	/**
+	 * The parameters, their gradients over a batch and Adam's moments, in
+	 * one array each, laid out as in the file
+	 */
+	private final int mOffsetBiases1;
+	private final int mOffsetWeights2;
+	private final int mOffsetBiases2;
+	private final int mOffsetWeights3;
+	private final int mOffsetBias3;
+	private final float[] mParameters;
+	private final float[] mGradients;
+	private final float[] mMoment1;
+	private final float[] mMoment2;
+	private int mSteps;
+
+	/**
+	 * Work arrays of one sample
+	 */
+	private final float[] mInput;		// clipped accumulators, own then other
+	private final float[] mSum2 = new float[Network.cSecond];
+	private final float[] mOutput2 = new float[Network.cSecond];
+	private final int[] mFeatures = new int[GameState.cSquares];
+
+	/**
+	 * The records: bitboards, score, flags (see SelfPlay)
+	 */
+	private int[] mRed = new int[0];
+	private int[] mWhite = new int[0];
+	private int[] mKings = new int[0];
+	private short[] mScores = new short[0];
+	private byte[] mFlags = new byte[0];
+	private int mRecords;
+
+	NetworkTrainer(int pHidden, double pRate, double pLambda, Random pRandom) {
+		this.mHidden = pHidden;
+		this.mRate = pRate;
+		this.mLambda = pLambda;
+
+		this.mOffsetBiases1 = Network.cInputs * pHidden;
+		this.mOffsetWeights2 = this.mOffsetBiases1 + pHidden;
+		this.mOffsetBiases2 = this.mOffsetWeights2 + Network.cSecond * 2 * pHidden;
+		this.mOffsetWeights3 = this.mOffsetBiases2 + Network.cSecond;
+		this.mOffsetBias3 = this.mOffsetWeights3 + Network.cSecond;
+		int lSize = this.mOffsetBias3 + 1;
+		this.mParameters = new float[lSize];
+		this.mGradients = new float[lSize];
+		this.mMoment1 = new float[lSize];
+		this.mMoment2 = new float[lSize];
+		this.mInput = new float[2 * pHidden];
+
+		// Small random weights, and first layer biases that start the
+		// neurons inside their unclipped range
+		for (int i = 0; i < this.mOffsetBiases1; i++) {
+			this.mParameters[i] = (float) (pRandom.nextGaussian() * 0.05);
+		} // End for
+		for (int i = 0; i < pHidden; i++) {
+			this.mParameters[this.mOffsetBiases1 + i] = 0.5f;
+		} // End for
+		double lScale2 = 1 / Math.sqrt(2 * pHidden);
+		for (int i = this.mOffsetWeights2; i < this.mOffsetBiases2; i++) {
+			this.mParameters[i] = (float) (pRandom.nextGaussian() * lScale2);
+		} // End for
+		for (int i = this.mOffsetWeights3; i < this.mOffsetBias3; i++) {
+			this.mParameters[i] = (float) (pRandom.nextGaussian() * 0.25);
+		} // End for
+	} // End constructor NetworkTrainer
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		// Parse parameters
+		List<String> files = new ArrayList<String>();
+		int epochs = 10;
+		int hidden = 64;
+		int batch = 256;
+		double rate = 0.001;
+		double lambda = 0.7;
+		long seed = System.nanoTime();
+		String out = Player.cNetworkFile;
+
+		for (int i = 0; i < args.length; ++i) {
+			String param = args[i];
+
+			if (param.equals("epochs") && i + 1 < args.length) {
+				epochs = Integer.parseInt(args[++i]);
+			} else if (param.equals("hidden") && i + 1 < args.length) {
+				hidden = Integer.parseInt(args[++i]);
+			} else if (param.equals("batch") && i + 1 < args.length) {
+				batch = Integer.parseInt(args[++i]);
+			} else if (param.equals("rate") && i + 1 < args.length) {
+				rate = Double.parseDouble(args[++i]);
+			} else if (param.equals("lambda") && i + 1 < args.length) {
+				lambda = Double.parseDouble(args[++i]);
+			} else if (param.equals("seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (param.equals("out") && i + 1 < args.length) {
+				out = args[++i];
+			} else {
+				files.add(param);
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("Usage: java NetworkTrainer <file>... [epochs <n>] [hidden <n>] [batch <n>]"
+					+ " [rate <r>] [lambda <l>] [seed <n>] [out <file>]");
+			return;
+		} // End if
+
+		Random random = new Random(seed);
+		NetworkTrainer trainer = new NetworkTrainer(hidden, rate, lambda, random);
+		for (String file : files) {
+			trainer.read(file);
+		} // End for
+
+		int validation = (int) (trainer.mRecords * cValidationShare);
+		int training = trainer.mRecords - validation;
+		System.err.println("Training on " + training + " positions, validating on " + validation);
+		if (training == 0) {
+			return;
+		} // End if
+
+		for (int epoch = 1; epoch <= epochs; epoch++) {
+			double loss = trainer.epoch(training, batch, random);
+			double validationLoss = trainer.loss(training, trainer.mRecords);
+			System.err.println(String.format("Epoch %d: training loss %.6f, validation loss %.6f",
+					epoch, loss, validationLoss));
+		} // End for
+
+		trainer.write(out);
+		System.err.println("Wrote " + out);
+	} // End main
+
+	/**
+	 * Adds the records of a SelfPlay file
+	 */
+	void read(String pFile) throws IOException {
+		try (FileChannel lChannel = FileChannel.open(Paths.get(pFile))) {
+			ByteBuffer lBuffer = lChannel.map(FileChannel.MapMode.READ_ONLY, 0, lChannel.size());
+			if (lBuffer.remaining() < SelfPlay.cHeaderBytes || lBuffer.getInt() != SelfPlay.cMagic
+					|| lBuffer.getInt() != SelfPlay.cVersion || lBuffer.getInt() != SelfPlay.cRecordBytes) {
+				throw new IOException(pFile + " is not a self-play file of version " + SelfPlay.cVersion);
+			} // End if
+
+			int lCount = lBuffer.remaining() / SelfPlay.cRecordBytes;
+			int lSize = this.mRecords + lCount;
+			this.mRed = Arrays.copyOf(this.mRed, lSize);
+			this.mWhite = Arrays.copyOf(this.mWhite, lSize);
+			this.mKings = Arrays.copyOf(this.mKings, lSize);
+			this.mScores = Arrays.copyOf(this.mScores, lSize);
+			this.mFlags = Arrays.copyOf(this.mFlags, lSize);
+			for (int i = this.mRecords; i < lSize; i++) {
+				this.mRed[i] = lBuffer.getInt();
+				this.mWhite[i] = lBuffer.getInt();
+				this.mKings[i] = lBuffer.getInt();
+				this.mScores[i] = lBuffer.getShort();
+				this.mFlags[i] = lBuffer.get();
+				lBuffer.get();
+			} // End for
+			this.mRecords = lSize;
+		} // End try
+	} // End read
+
+	/**
+	 * One pass over the first pCount records, in random order
+	 *
+	 * @return the mean loss
+	 */
+	double epoch(int pCount, int pBatch, Random pRandom) {
+		// Shuffle the training records in place
+		for (int i = pCount - 1; i > 0; i--) {
+			this.swap(i, pRandom.nextInt(i + 1));
+		} // End for
+
+		double lLoss = 0;
+		for (int lStart = 0; lStart < pCount; lStart += pBatch) {
+			int lEnd = Math.min(lStart + pBatch, pCount);
+			for (int i = lStart; i < lEnd; i++) {
+				lLoss += this.sample(i, true);
+			} // End for
+			this.step(lEnd - lStart);
+		} // End for
+		return lLoss / pCount;
+	} // End epoch
+
+	/**
+	 * @return the mean loss over records pFrom to pTo, without training
+	 */
+	double loss(int pFrom, int pTo) {
+		double lLoss = 0;
+		for (int i = pFrom; i < pTo; i++) {
+			lLoss += this.sample(i, false);
+		} // End for
+		return (pTo > pFrom) ? lLoss / (pTo - pFrom) : 0;
+	} // End loss
+
+	/**
+	 * Runs the network on a record, and adds the gradients of its loss
+	 *
+	 * @param pTrain true to add the gradients
+	 * @return the loss
+	 */
+	private double sample(int pRecord, boolean pTrain) {
+		float[] lParameters = this.mParameters;
+		int lHidden = this.mHidden;
+		boolean lWhiteToMove = (this.mFlags[pRecord] & 1) != 0;
+
+		// The features of the pieces, from red's point of view
+		int lFeatures = 0;
+		int lRed = this.mRed[pRecord];
+		int lWhite = this.mWhite[pRecord];
+		int lKings = this.mKings[pRecord];
+		for (int lLeft = lRed | lWhite; lLeft != 0; lLeft &= lLeft - 1) {
+			int lSquare = Integer.numberOfTrailingZeros(lLeft);
+			int lKind = ((lWhite >>> lSquare) & 1) | (((lKings >>> lSquare) & 1) << 1);
+			this.mFeatures[lFeatures++] = (lKind << 5) | lSquare;
+		} // End for
+
+		// The accumulators of the player to move, then of the other
+		int lOwnMirror = lWhiteToMove ? GameState.cMirrorIndex : 0;
+		for (int i = 0; i < lHidden; i++) {
+			float lOwn = lParameters[this.mOffsetBiases1 + i];
+			float lOther = lOwn;
+			for (int f = 0; f < lFeatures; f++) {
+				lOwn += lParameters[(this.mFeatures[f] ^ lOwnMirror) * lHidden + i];
+				lOther += lParameters[(this.mFeatures[f] ^ lOwnMirror ^ GameState.cMirrorIndex) * lHidden + i];
+			} // End for
+			this.mInput[i] = lOwn;
+			this.mInput[lHidden + i] = lOther;
+		} // End for
+
+		// The second layer and the output
+		float lOutput = lParameters[this.mOffsetBias3];
+		for (int n = 0; n < Network.cSecond; n++) {
+			int lWeights = this.mOffsetWeights2 + n * 2 * lHidden;
+			float lSum = lParameters[this.mOffsetBiases2 + n];
+			for (int i = 0; i < 2 * lHidden; i++) {
+				lSum += NetworkTrainer.clip(this.mInput[i]) * lParameters[lWeights + i];
+			} // End for
+			this.mSum2[n] = lSum;
+			this.mOutput2[n] = NetworkTrainer.clip(lSum);
+			lOutput += this.mOutput2[n] * lParameters[this.mOffsetWeights3 + n];
+		} // End for
+
+		int lResult = (this.mFlags[pRecord] >> 1) & 3;
+		double lTarget = this.mLambda * NetworkTrainer.sigmoid(this.mScores[pRecord] / cScoreScale)
+				+ (1 - this.mLambda) * lResult / 2.0;
+		double lPrediction = NetworkTrainer.sigmoid(lOutput * Network.cOutputScale / cScoreScale);
+		double lError = lPrediction - lTarget;
+		if (!pTrain) {
+			return lError * lError;
+		} // End if
+
+		// Back propagation
+		float[] lGradients = this.mGradients;
+		float lOutputGradient = (float) (2 * lError * lPrediction * (1 - lPrediction)
+				* Network.cOutputScale / cScoreScale);
+		lGradients[this.mOffsetBias3] += lOutputGradient;
+		for (int n = 0; n < Network.cSecond; n++) {
+			lGradients[this.mOffsetWeights3 + n] += lOutputGradient * this.mOutput2[n];
+			if (this.mSum2[n] <= 0 || this.mSum2[n] >= 1) {
+				continue;
+			} // End if
+			float lSumGradient = lOutputGradient * lParameters[this.mOffsetWeights3 + n];
+			lGradients[this.mOffsetBiases2 + n] += lSumGradient;
+			int lWeights = this.mOffsetWeights2 + n * 2 * lHidden;
+			for (int i = 0; i < 2 * lHidden; i++) {
+				lGradients[lWeights + i] += lSumGradient * NetworkTrainer.clip(this.mInput[i]);
+			} // End for
+		} // End for
+
+		for (int i = 0; i < 2 * lHidden; i++) {
+			if (this.mInput[i] <= 0 || this.mInput[i] >= 1) {
+				continue;
+			} // End if
+			float lInputGradient = 0;
+			for (int n = 0; n < Network.cSecond; n++) {
+				if (this.mSum2[n] > 0 && this.mSum2[n] < 1) {
+					lInputGradient += lOutputGradient * lParameters[this.mOffsetWeights3 + n]
+							* lParameters[this.mOffsetWeights2 + n * 2 * lHidden + i];
+				} // End if
+			} // End for
+
+			int lNeuron = i % lHidden;
+			int lMirror = (i < lHidden) ? lOwnMirror : lOwnMirror ^ GameState.cMirrorIndex;
+			lGradients[this.mOffsetBiases1 + lNeuron] += lInputGradient;
+			for (int f = 0; f < lFeatures; f++) {
+				lGradients[(this.mFeatures[f] ^ lMirror) * lHidden + lNeuron] += lInputGradient;
+			} // End for
+		} // End for
+		return lError * lError;
+	} // End sample
+
+	/**
+	 * Applies the gradients of a batch with Adam, and clears them
+	 */
+	private void step(int pBatch) {
+		this.mSteps++;
+		double lRate = this.mRate * Math.sqrt(1 - Math.pow(cBeta2, this.mSteps))
+				/ (1 - Math.pow(cBeta1, this.mSteps));
+		for (int i = 0; i < this.mParameters.length; i++) {
+			float lGradient = this.mGradients[i] / pBatch;
+			this.mMoment1[i] = (float) (cBeta1 * this.mMoment1[i] + (1 - cBeta1) * lGradient);
+			this.mMoment2[i] = (float) (cBeta2 * this.mMoment2[i] + (1 - cBeta2) * lGradient * lGradient);
+			this.mParameters[i] -= (float) (lRate * this.mMoment1[i] / (Math.sqrt(this.mMoment2[i]) + cEpsilon));
+			this.mGradients[i] = 0;
+		} // End for
+
+		for (int i = 0; i < this.mOffsetWeights2; i++) {
+			this.mParameters[i] = Math.max(-cMaxWeight1, Math.min(this.mParameters[i], cMaxWeight1));
+		} // End for
+		for (int i = this.mOffsetWeights2; i < this.mOffsetBiases2; i++) {
+			this.mParameters[i] = Math.max(-cMaxWeight2, Math.min(this.mParameters[i], cMaxWeight2));
+		} // End for
+	} // End step
+
+	/**
+	 * Quantises the network and writes it in the format read by Network
+	 */
+	void write(String pFile) throws IOException {
+		float lScaleA = Network.cScaleA;
+		float lScaleB = Network.cScaleB;
+		try (DataOutputStream lOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pFile)))) {
+			lOut.writeInt(Network.cMagic);
+			lOut.writeInt(Network.cVersion);
+			lOut.writeInt(this.mHidden);
+			lOut.writeInt(Network.cSecond);
+			for (int i = 0; i < this.mOffsetWeights2; i++) {
+				lOut.writeShort(Math.round(this.mParameters[i] * lScaleA));
+			} // End for
+			for (int i = this.mOffsetWeights2; i < this.mOffsetBiases2; i++) {
+				lOut.writeByte(Math.round(this.mParameters[i] * lScaleB));
+			} // End for
+			for (int i = this.mOffsetBiases2; i < this.mOffsetWeights3; i++) {
+				lOut.writeInt(Math.round(this.mParameters[i] * lScaleA * lScaleB));
+			} // End for
+			for (int i = this.mOffsetWeights3; i < this.mOffsetBias3; i++) {
+				lOut.writeShort(Math.round(this.mParameters[i] * lScaleB));
+			} // End for
+			lOut.writeInt(Math.round(this.mParameters[this.mOffsetBias3] * lScaleA * lScaleB));
+		} // End try
+	} // End write
+
+	/**
+	 * Swaps records i and j
+	 */
+	private void swap(int i, int j) {
+		int lRed = this.mRed[i];
+		this.mRed[i] = this.mRed[j];
+		this.mRed[j] = lRed;
+
+		int lWhite = this.mWhite[i];
+		this.mWhite[i] = this.mWhite[j];
+		this.mWhite[j] = lWhite;
+
+		int lKings = this.mKings[i];
+		this.mKings[i] = this.mKings[j];
+		this.mKings[j] = lKings;
+
+		short lScore = this.mScores[i];
+		this.mScores[i] = this.mScores[j];
+		this.mScores[j] = lScore;
+
+		byte lFlags = this.mFlags[i];
+		this.mFlags[i] = this.mFlags[j];
+		this.mFlags[j] = lFlags;
+	} // End swap
+
+	private static float clip(float pValue) {
+		return Math.max(0, Math.min(pValue, 1));
+	} // End clip
+
+	private static double sigmoid(double pValue) {
+		return 1 / (1 + Math.exp(-pValue));
+	} // End sigmoid
+} // End class NetworkTrainer
@@ -0,0 +1,147 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Book moves for the opening, read from a file written by BookBuilder
+ *
+ * The file is memory-mapped and searched in place, so a lookup is a binary
+ * search over the file and costs no time on the heap. It is safe to probe
+ * from several threads.
+ *
+ * The file holds entries of (position key, move, weight), sorted by key
+ * and then by move, so all moves of a position are next to each other. The
+ * weight of a move is the number of points the player who made it scored
+ * in the games it was played in (2 for a win, 1 for a draw).
+ *
+ * Keys are canonical (see GameState.getCanonicalKey()), so a position and
+ * its mirror share their moves. The moves of a mirrored position are
+ * stored as moves of the reversed board.
+ *
+ * File layout (big-endian):
+ *   int    cMagic
+ *   int    cVersion
+ *   long   the key of the starting position, which changes if the
+ *          Zobrist numbers do and the keys in the file become useless
+ *   int    the number of entries
+ *   entries of long key, long packed move, int weight
+ */
+public class OpeningBook {
+	static final int cMagic = 0x434B4F42;	// "CKOB"
+	static final int cVersion = 2;
+
+	static final int cHeaderBytes = 20;
+	static final int cEntryBytes = 20;
+
+	private final MappedByteBuffer mData;
+	private final int mCount;
+
+	/**
+	 * Maps a book file
+	 *
+	 * @param pFile the file written by BookBuilder
+	 * @throws IOException if the file can't be read, is not a book, or was
+	 *   written with other keys
+	 */
+	public OpeningBook(File pFile) throws IOException {
+		try (RandomAccessFile lFile = new RandomAccessFile(pFile, "r");
+				FileChannel lChannel = lFile.getChannel()) {
+			if (lChannel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Book too large to map: " + pFile);
+			} // End if
+			this.mData = lChannel.map(FileChannel.MapMode.READ_ONLY, 0, lChannel.size());
+		} // End try
+
+		if (this.mData.getInt(0) != cMagic || this.mData.getInt(4) != cVersion) {
+			throw new IOException("Not an opening book: " + pFile);
+		} // End if
+		if (this.mData.getLong(8) != new GameState().getKey()) {
+			throw new IOException("Opening book was written with other position keys: " + pFile);
+		} // End if
+		this.mCount = this.mData.getInt(16);
+	} // End constructor OpeningBook
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return this.mCount;
+	} // End size
+
+	/**
+	 * Looks up the best book move of a position
+	 *
+	 * The move is checked against the legal moves of pState, so a key
+	 * collision can't make us play an illegal move.
+	 *
+	 * @return the legal move with the highest weight in packed form, or
+	 *   TranspositionTable.cNoMove if the book has none
+	 */
+	public long probe(GameState pState) {
+		long lKey = pState.getCanonicalKey();
+		boolean lMirrored = pState.isMirrored();
+		int lFirst = this.first(lKey);
+
+		long lBestMove = TranspositionTable.cNoMove;
+		int lBestWeight = 0;
+		long[] lMoves = null;
+		int lCount = 0;
+
+		for (int i = lFirst; i < this.mCount && this.key(i) == lKey; i++) {
+			int lOffset = cHeaderBytes + i * cEntryBytes;
+			long lMove = this.mData.getLong(lOffset + 8);
+			if (lMirrored) {
+				lMove = Move.reversed(lMove);
+			} // End if
+			int lWeight = this.mData.getInt(lOffset + 16);
+			if (lWeight <= lBestWeight) {
+				continue;
+			} // End if
+
+			if (lMoves == null) {
+				lMoves = new long[GameState.cMaxMoves];
+				lCount = pState.findPossibleMoves(lMoves);
+			} // End if
+			if (OpeningBook.contains(lMoves, lCount, lMove)) {
+				lBestMove = lMove;
+				lBestWeight = lWeight;
+			} // End if
+		} // End for
+		return lBestMove;
+	} // End probe
+
+	/**
+	 * @return the key of entry pIndex
+	 */
+	private long key(int pIndex) {
+		return this.mData.getLong(cHeaderBytes + pIndex * cEntryBytes);
+	} // End key
+
+	/**
+	 * @return the first entry with a key not below pKey
+	 */
+	private int first(long pKey) {
+		int lLow = 0;
+		int lHigh = this.mCount;
+		while (lLow < lHigh) {
+			int lMiddle = (lLow + lHigh) >>> 1;
+			if (this.key(lMiddle) < pKey) {
+				lLow = lMiddle + 1;
+			} else {
+				lHigh = lMiddle;
+			} // End else
+		} // End while
+		return lLow;
+	} // End first
+
+	private static boolean contains(long[] pMoves, int pCount, long pMove) {
+		for (int i = 0; i < pCount; i++) {
+			if (pMoves[i] == pMove) {
+				return true;
+			} // End if
+		} // End for
+		return false;
+	} // End contains
+} // End class OpeningBook
@@ -0,0 +1,277 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the game tree to a fixed depth
+ *
+ * This is both a correctness check for the move generator (the counts
+ * from the starting position are well known) and a way to time it.
+ *
+ * Usage:
+ *   java Perft <depth> [divide] [threads <n>] [hash <MB>] [<board> <move> <player> <moves left>]
+ *
+ * - divide prints the count below every move from the root
+ * - threads sets the number of worker threads (default: all cores)
+ * - hash reuses the counts of subtrees that have been seen before
+ * - the last four arguments are a state as produced by toMessage();
+ *   the default is the starting position
+ */
+public class Perft {
+	/**
+	 * Subtrees with more remaining depth than this are split into tasks
+	 */
+	private static final int cSplitDepth = 6;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		// Parse parameters
+		int depth = -1;
+		boolean divide = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int hashMB = 0;
+		GameState state = new GameState();
+
+		for (int i = 0; i < args.length; ++i) {
+			String param = args[i];
+
+			if (param.equals("divide") || param.equals("d")) {
+				divide = true;
+			} else if ((param.equals("threads") || param.equals("t")) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if ((param.equals("hash") || param.equals("h")) && i + 1 < args.length) {
+				hashMB = Integer.parseInt(args[++i]);
+			} else if (param.length() == GameState.cSquares && i + 3 < args.length) {
+				state = new GameState(param + " " + args[i + 1] + " " + args[i + 2] + " " + args[i + 3]);
+				i += 3;
+			} else if (depth < 0 && param.matches("\\d+")) {
+				depth = Integer.parseInt(param);
+			} else {
+				System.err.println("Unknown parameter: '" + args[i] + "'");
+				return;
+			}
+		}
+
+		if (depth < 0) {
+			System.err.println("Usage: java Perft <depth> [divide] [threads <n>] [hash <MB>]"
+					+ " [<board> <move> <player> <moves left>]");
+			return;
+		} // End if
+
+		System.err.println(state.toString(state.getNextPlayer()));
+
+		Table table = (hashMB > 0) ? new Table(hashMB) : null;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		long start = System.nanoTime();
+		long total = 0;
+
+		if (divide && depth > 0) {
+			long[] moves = new long[GameState.cMaxMoves];
+			int count = state.findPossibleMoves(moves);
+
+			// Start all root moves before waiting for any of them
+			Task[] tasks = new Task[count];
+			for (int i = 0; i < count; i++) {
+				tasks[i] = new Task(new GameState(state, moves[i]), depth - 1, table);
+				pool.execute(tasks[i]);
+			} // End for
+
+			for (int i = 0; i < count; i++) {
+				long nodes = tasks[i].join();
+				System.out.println(Move.valueOf(moves[i]).toMessage() + " " + nodes);
+				total += nodes;
+			} // End for
+		} else {
+			total = pool.invoke(new Task(state, depth, table));
+		} // End else
+
+		long elapsed = System.nanoTime() - start;
+		pool.shutdown();
+
+		System.out.println("Depth " + depth + ": " + total + " nodes");
+		System.err.println("Time: " + (elapsed / 1000000) + " ms, "
+				+ (long) (total / Math.max(elapsed / 1e9, 1e-9)) + " nodes/s, "
+				+ threads + " threads");
+	} // End main
+
+	/**
+	 * Counts the leaves of one subtree, splitting it into subtasks while
+	 * the remaining depth is large enough to pay for it
+	 */
+	static class Task extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final GameState mState;
+		private final int mDepth;
+		private final Table mTable;
+
+		/**
+		 * @param pState the root of the subtree. It belongs to the task.
+		 * @param pDepth the depth to count to
+		 * @param pTable the table of known counts, or null
+		 */
+		Task(GameState pState, int pDepth, Table pTable) {
+			this.mState = pState;
+			this.mDepth = pDepth;
+			this.mTable = pTable;
+		} // End constructor Task
+
+		@Override
+		protected Long compute() {
+			if (this.mDepth <= cSplitDepth) {
+				long[][] lMoves = new long[this.mDepth + 1][GameState.cMaxMoves];
+				return Perft.count(this.mState, this.mDepth, lMoves, this.mTable);
+			} // End if
+
+			if (this.mTable != null) {
+				long lCount = this.mTable.probe(this.mState, this.mDepth);
+				if (lCount >= 0) {
+					return lCount;
+				} // End if
+			} // End if
+
+			long[] lMoves = new long[GameState.cMaxMoves];
+			int lCount = this.mState.findPossibleMoves(lMoves);
+
+			Task[] lTasks = new Task[lCount];
+			for (int i = 0; i < lCount; i++) {
+				lTasks[i] = new Task(new GameState(this.mState, lMoves[i]), this.mDepth - 1, this.mTable);
+			} // End for
+			invokeAll(lTasks);
+
+			long lTotal = 0;
+			for (int i = 0; i < lCount; i++) {
+				lTotal += lTasks[i].join();
+			} // End for
+
+			if (this.mTable != null) {
+				this.mTable.store(this.mState, this.mDepth, lTotal);
+			} // End if
+			return lTotal;
+		} // End compute
+	} // End class Task
+
+	/**
+	 * Counts the leaves below pState on a single thread, using
+	 * doMove/undoMove on pState itself
+	 *
+	 * @param pState the state to count from. It is left unchanged.
+	 * @param pDepth the depth to count to
+	 * @param pMoves one move buffer per ply, at least pDepth + 1 of them
+	 * @param pTable the table of known counts, or null
+	 * @return the number of leaves
+	 */
+	static long count(GameState pState, int pDepth, long[][] pMoves, Table pTable) {
+		if (pDepth == 0) {
+			return 1;
+		} // End if
+
+		long[] lMoves = pMoves[pDepth];
+		int lCount = pState.findPossibleMoves(lMoves);
+
+		// The moves themselves are the leaves
+		if (pDepth == 1) {
+			return lCount;
+		} // End if
+
+		if (pTable != null) {
+			long lKnown = pTable.probe(pState, pDepth);
+			if (lKnown >= 0) {
+				return lKnown;
+			} // End if
+		} // End if
+
+		long lTotal = 0;
+		for (int i = 0; i < lCount; i++) {
+			pState.doMove(lMoves[i]);
+			lTotal += Perft.count(pState, pDepth - 1, pMoves, pTable);
+			pState.undoMove();
+		} // End for
+
+		if (pTable != null) {
+			pTable.store(pState, pDepth, lTotal);
+		} // End if
+		return lTotal;
+	} // End count
+
+	/**
+	 * A fixed-size table of subtree counts, shared by all threads without locks
+	 *
+	 * Each entry holds the full position (so there are no false hits),
+	 * the count, and a check word that is the XOR of the other three. An
+	 * entry that is being written by another thread while we read it fails
+	 * the check and is treated as a miss.
+	 */
+	static class Table {
+		private static final int cEntryLongs = 4;
+
+		private final long[] mData;
+		private final int mMask;
+
+		/**
+		 * @param pMB the size of the table in megabytes
+		 */
+		Table(int pMB) {
+			long lEntries = Long.highestOneBit(((long) pMB << 20) / (8 * cEntryLongs));
+			lEntries = Math.min(Math.max(lEntries, 1), 1 << 26);
+			this.mData = new long[(int) lEntries * cEntryLongs];
+			this.mMask = (int) lEntries - 1;
+		} // End constructor Table
+
+		/**
+		 * @return the board part of the position key
+		 */
+		private static long board(GameState pState) {
+			return ((long) pState.getRed() << 32) | (pState.getWhite() & 0xFFFFFFFFL);
+		} // End board
+
+		/**
+		 * @return the rest of the position key, including the depth
+		 */
+		private static long status(GameState pState, int pDepth) {
+			return ((long) pState.getKings() << 32)
+					| ((long) pState.getMovesUntilDraw() << 16)
+					| ((long) pState.getNextPlayer() << 12)
+					| ((pState.isEOG() ? 1L : 0L) << 11)
+					| pDepth;
+		} // End status
+
+		private int index(long pBoard, long pStatus) {
+			long lHash = (pBoard * 0x9E3779B97F4A7C15L) ^ (pStatus * 0xC2B2AE3D27D4EB4FL);
+			return (int) (lHash ^ (lHash >>> 32)) & this.mMask;
+		} // End index
+
+		/**
+		 * @return the stored count, or -1 if there is none
+		 */
+		long probe(GameState pState, int pDepth) {
+			long lBoard = Table.board(pState);
+			long lStatus = Table.status(pState, pDepth);
+			int i = this.index(lBoard, lStatus) * cEntryLongs;
+
+			long lCheck = this.mData[i];
+			long lStoredBoard = this.mData[i + 1];
+			long lStoredStatus = this.mData[i + 2];
+			long lCount = this.mData[i + 3];
+
+			if (lStoredBoard != lBoard || lStoredStatus != lStatus
+					|| lCheck != (lBoard ^ lStatus ^ lCount)) {
+				return -1;
+			} // End if
+			return lCount;
+		} // End probe
+
+		void store(GameState pState, int pDepth, long pCount) {
+			long lBoard = Table.board(pState);
+			long lStatus = Table.status(pState, pDepth);
+			int i = this.index(lBoard, lStatus) * cEntryLongs;
+
+			this.mData[i] = lBoard ^ lStatus ^ pCount;
+			this.mData[i + 1] = lBoard;
+			this.mData[i + 2] = lStatus;
+			this.mData[i + 3] = pCount;
+		} // End store
+	} // End class Table
+} // End class Perft
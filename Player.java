@@ -0,0 +1,853 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Chooses moves with an iterative deepening alpha-beta (negamax) search
+ *
+ * The search goes one ply deeper each iteration. TimeManager sets a soft
+ * limit, after which no new iteration is started, and a hard limit, at
+ * which the search is stopped. The search polls the hard limit, and a
+ * watchdog thread also stops it there in case polling comes too late.
+ * The move returned is always the best move of the
+ * deepest iteration that completed, so running out of time never leaves
+ * us without a move. Results are kept in a transposition table, which
+ * also provides the move to try first at every node; the other moves are
+ * ranked by MoveOrdering. At the leaves, the
+ * search goes on along forced jumps until the position is quiet.
+ *
+ * The search runs on several threads if there are several cores. Each
+ * thread has its own copy of the position and its own move buffers, and
+ * they all share the transposition table.
+ *
+ * If an endgame tablebase (see TablebaseGenerator) is found in
+ * cTablebaseFile, positions with few pieces are scored from it instead of
+ * being searched. Likewise, moves are taken from an opening book (see
+ * BookBuilder) in cBookFile while it knows the position. A network (see
+ * Network) in cNetworkFile replaces Evaluator at the leaves. The files are
+ * looked for in the working directory, unless the constructor is given
+ * another one.
+ *
+ * Between moves, the player can ponder: search the position the opponent
+ * has to move in, on a background thread, until the opponent's move
+ * arrives. That search covers all the opponent's replies, and what it
+ * finds stays in the transposition table for the search of our next move.
+ *
+ * Every completed iteration of the main searcher and every move emit a
+ * Java Flight Recorder event (SearchIterationEvent, MoveCompletedEvent),
+ * and moves are counted in SearchMetrics if it is enabled.
+ */
+public class Player {
+	/**
+	 * Scores are from the point of view of the player to move. A won
+	 * position scores cWin minus the number of plies to the win, so that
+	 * faster wins are preferred.
+	 */
+	static final int cInfinity = 30000;
+	static final int cWin = 20000;
+	static final int cNoScore = Integer.MIN_VALUE;	// the move was played without a search
+
+	static final int cMaxPly = 128;			// the search never goes deeper than this
+
+	/**
+	 * Scores above cWin - cWinPlies are wins. A win can be found at
+	 * cMaxPly, or in the tablebase as far again as its longest distance.
+	 */
+	static final int cWinPlies = cMaxPly + Tablebase.cMaxDistance + 1;
+	static final int cTableMB = 64;			// default size of the transposition table
+	static final String cTablebaseFile = "endgame.tb";
+	static final String cBookFile = "opening.book";
+	static final String cNetworkFile = "eval.nnue";
+
+	/**
+	 * How often (in nodes) the deadline is checked
+	 */
+	private static final int cCheckInterval = 1024;
+
+	/**
+	 * Slack of delta pruning in quiescence, for the positional terms a
+	 * capture can change
+	 */
+	private static final int cDeltaMargin = 50;
+
+	/**
+	 * The limit of a ponder search, longer than any opponent thinks. It is
+	 * stopped when the opponent's move comes.
+	 */
+	private static final long cPonderMillis = 3600 * 1000;
+
+	/**
+	 * The watchdog threads of all players. They only flip stop flags.
+	 */
+	private static final ScheduledExecutorService cWatchdog = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				public Thread newThread(Runnable pTask) {
+					Thread lThread = new Thread(pTask, "Player watchdog");
+					lThread.setDaemon(true);
+					return lThread;
+				} // End newThread
+			});
+
+	private final TranspositionTable mTable;
+	private final Searcher[] mSearchers;
+	private final ForkJoinPool mPool;		// runs the helper searchers, null if there are none
+	private final Tablebase mTablebase;		// null if there is none
+	private final OpeningBook mBook;		// null if there is none
+	private final Network mNetwork;			// null if there is none
+	private ExecutorService mPonderer;		// runs ponder searches, created by the first one
+	private Future<?> mPondering;			// the running ponder search, or null
+	private boolean mPonder;				// true while the search is a ponder search
+	private GameState mPondered;			// the position of the last ponder search, or null
+
+	private final TimeManager mTimeManager = new TimeManager();
+	private Deadline mDeadline;		// the limits of the current search
+	private long mStart;			// System.nanoTime() when it started
+	private volatile boolean mStopped;
+	private int mMaxDepth = cMaxPly;	// the deepest iteration searched
+	private int mLastScore = cNoScore;	// score of the last move played
+
+	/**
+	 * Creates a player that searches on all available cores
+	 */
+	public Player() {
+		this(Runtime.getRuntime().availableProcessors());
+	} // End constructor Player
+
+	/**
+	 * @param pThreads the number of threads to search with
+	 */
+	public Player(int pThreads) {
+		this(pThreads, cTableMB);
+	} // End constructor Player
+
+	/**
+	 * @param pThreads the number of threads to search with
+	 * @param pTableMB the size of the transposition table in megabytes
+	 */
+	public Player(int pThreads, int pTableMB) {
+		this(pThreads, pTableMB, null, true);
+	} // End constructor Player
+
+	/**
+	 * @param pThreads the number of threads to search with
+	 * @param pTableMB the size of the transposition table in megabytes
+	 * @param pBook false to leave out the opening book, e.g. when playing
+	 *   the games a new one is built from
+	 */
+	public Player(int pThreads, int pTableMB, boolean pBook) {
+		this(pThreads, pTableMB, null, pBook);
+	} // End constructor Player
+
+	/**
+	 * @param pThreads the number of threads to search with
+	 * @param pTableMB the size of the transposition table in megabytes
+	 * @param pDirectory where the tablebase, book and network files are
+	 */
+	public Player(int pThreads, int pTableMB, File pDirectory) {
+		this(pThreads, pTableMB, pDirectory, true);
+	} // End constructor Player
+
+	/**
+	 * @param pDirectory where the tablebase, book and network files are, or
+	 *   null for the working directory
+	 */
+	private Player(int pThreads, int pTableMB, File pDirectory, boolean pBook) {
+		int lThreads = Math.max(pThreads, 1);
+		this.mTable = new TranspositionTable(pTableMB);
+		this.mNetwork = Player.openNetwork(new File(pDirectory, cNetworkFile));
+		this.mSearchers = new Searcher[lThreads];
+		for (int i = 0; i < lThreads; i++) {
+			this.mSearchers[i] = new Searcher(i);
+		} // End for
+		this.mPool = (lThreads > 1) ? new ForkJoinPool(lThreads - 1) : null;
+		this.mTablebase = Player.openTablebase(new File(pDirectory, cTablebaseFile));
+		this.mBook = pBook ? Player.openBook(new File(pDirectory, cBookFile)) : null;
+
+		// Setting up JMX and the event classes takes a while, which must
+		// not come out of the first move's time
+		if (SearchMetrics.cEnabled) {
+			SearchMetrics.register();
+		} // End if
+		FlightRecorder.register(SearchIterationEvent.class);
+		FlightRecorder.register(MoveCompletedEvent.class);
+	} // End constructor Player
+
+	/**
+	 * @return the tablebase in pFile, or null if there is none or it can't
+	 *   be read
+	 */
+	private static Tablebase openTablebase(File pFile) {
+		if (!pFile.isFile()) {
+			return null;
+		} // End if
+		try {
+			return new Tablebase(pFile);
+		} catch (IOException e) {
+			System.err.println("Ignoring tablebase: " + e.getMessage());
+			return null;
+		} // End catch
+	} // End openTablebase
+
+	/**
+	 * @return the network in pFile, or null if there is none or it can't
+	 *   be read
+	 */
+	private static Network openNetwork(File pFile) {
+		if (!pFile.isFile()) {
+			return null;
+		} // End if
+		try {
+			return new Network(pFile);
+		} catch (IOException e) {
+			System.err.println("Ignoring network: " + e.getMessage());
+			return null;
+		} // End catch
+	} // End openNetwork
+
+	/**
+	 * @return the opening book in pFile, or null if there is none or it
+	 *   can't be read
+	 */
+	private static OpeningBook openBook(File pFile) {
+		if (!pFile.isFile()) {
+			return null;
+		} // End if
+		try {
+			return new OpeningBook(pFile);
+		} catch (IOException e) {
+			System.err.println("Ignoring opening book: " + e.getMessage());
+			return null;
+		} // End catch
+	} // End openBook
+
+	/**
+	 * Limits the depth of the searches, so that a move can take less than
+	 * the time given
+	 *
+	 * @param pMaxDepth the deepest iteration to search, at most cMaxPly
+	 */
+	public void setMaxDepth(int pMaxDepth) {
+		this.mMaxDepth = Math.max(1, Math.min(pMaxDepth, cMaxPly));
+	} // End setMaxDepth
+
+	/**
+	 * @return the score of the last move played, for the player who made
+	 *   it, or cNoScore if it was played without a search
+	 */
+	public int getLastScore() {
+		return this.mLastScore;
+	} // End getLastScore
+
+	/**
+	 * Performs a move
+	 *
+	 * All threads search the same position (Lazy SMP). They share the
+	 * transposition table, so each one mostly finds the results of the
+	 * others and goes on from there. Every other helper searches one ply
+	 * deeper than the main searcher, which spreads the threads over the
+	 * tree. The move of the deepest completed iteration is played.
+	 *
+	 * @param pState
+	 *            the current state of the board
+	 * @param pDeadline
+	 *            time before which we must have returned
+	 * @return the next state the board is in after our move
+	 */
+	public GameState play(final GameState pState, final Deadline pDeadline) {
+		this.stopPondering();
+
+		MoveCompletedEvent lEvent = new MoveCompletedEvent();
+		lEvent.begin();
+		long[] lRootMoves = new long[GameState.cMaxMoves];
+		int lCount = pState.findPossibleMoves(lRootMoves);
+		this.mLastScore = cNoScore;
+
+		// Nothing to think about
+		if (lCount == 0) {
+			return this.completed(lEvent, "forced", null, pDeadline,
+					new GameState(pState, new Move(Move.MoveType.MOVE_NULL)));
+		} // End if
+		if (lCount == 1) {
+			return this.completed(lEvent, "forced", null, pDeadline, new GameState(pState, lRootMoves[0]));
+		} // End if
+		if (this.mBook != null) {
+			long lBookMove = this.mBook.probe(pState);
+			if (lBookMove != TranspositionTable.cNoMove) {
+				return this.completed(lEvent, "book", null, pDeadline, new GameState(pState, lBookMove));
+			} // End if
+		} // End if
+
+		this.mStart = System.nanoTime();
+		this.mDeadline = this.mTimeManager.allocate(pState, lCount, pDeadline);
+		this.mStopped = false;
+
+		// After a ponder search of the position before the opponent's
+		// move, the table's entries are this search's, so they are kept
+		if (!this.followsPonder(pState)) {
+			this.mTable.newSearch();
+		} // End if
+		this.mPondered = null;
+
+		ScheduledFuture<?> lWatchdog = cWatchdog.schedule(new Runnable() {
+			public void run() {
+				Player.this.mStopped = true;
+			} // End run
+		}, this.mDeadline.nanosUntil(), TimeUnit.NANOSECONDS);
+
+		Searcher lBest = this.search(pState, lRootMoves[0]);
+		lWatchdog.cancel(false);
+
+		if (lBest.mCompletedDepth > 0) {
+			this.mLastScore = lBest.mLastScore;
+		} // End if
+		return this.completed(lEvent, "search", lBest, pDeadline, new GameState(pState, lBest.mBestMove));
+	} // End play
+
+	/**
+	 * Reports a chosen move to SearchMetrics and Java Flight Recorder
+	 *
+	 * @param pEvent the event begun when play() was called
+	 * @param pSource how the move was chosen
+	 * @param pBest the searcher whose move it is, or null if there was no search
+	 * @param pDeadline the deadline given to play()
+	 * @param pNext the state after the move
+	 * @return pNext
+	 */
+	private GameState completed(MoveCompletedEvent pEvent, String pSource, Searcher pBest,
+			Deadline pDeadline, GameState pNext) {
+		if (pBest == null) {
+			if (pEvent.shouldCommit()) {
+				pEvent.source = pSource;
+				pEvent.move = pNext.getMove().toMessage();
+				pEvent.margin = pDeadline.nanosUntil();
+				pEvent.commit();
+			} // End if
+			return pNext;
+		} // End if
+		if (!SearchMetrics.cEnabled && !pEvent.shouldCommit()) {
+			return pNext;
+		} // End if
+
+		long lNanos = System.nanoTime() - this.mStart;
+		long lNodes = 0;
+		long lProbes = 0;
+		long lHits = 0;
+		for (Searcher lSearcher : this.mSearchers) {
+			lNodes += lSearcher.mNodes;
+			lProbes += lSearcher.mProbes;
+			lHits += lSearcher.mHits;
+		} // End for
+		double lHitRate = (lProbes > 0) ? (double) lHits / lProbes : 0;
+		long lMargin = pDeadline.nanosUntil();
+
+		if (SearchMetrics.cEnabled) {
+			SearchMetrics.moveCompleted(pBest.mCompletedDepth, lNodes, lNanos, pBest.mBranchingFactor,
+					lHitRate, lMargin);
+		} // End if
+		if (pEvent.shouldCommit()) {
+			pEvent.source = pSource;
+			pEvent.move = pNext.getMove().toMessage();
+			pEvent.depth = pBest.mCompletedDepth;
+			pEvent.score = pBest.mLastScore;
+			pEvent.nodes = lNodes;
+			pEvent.nodesPerSecond = (lNanos > 0) ? lNodes * 1000000000L / lNanos : 0;
+			pEvent.branchingFactor = pBest.mBranchingFactor;
+			pEvent.tableHitRate = lHitRate;
+			pEvent.allocated = this.mDeadline.getHard() - this.mStart;
+			pEvent.margin = lMargin;
+			pEvent.threads = this.mSearchers.length;
+			pEvent.commit();
+		} // End if
+		return pNext;
+	} // End completed
+
+	/**
+	 * Starts searching pState, the position after our move, on a
+	 * background thread. The search runs until the next call to play() or
+	 * stopPondering().
+	 *
+	 * @param pState the position the opponent has to move in
+	 */
+	public void ponder(final GameState pState) {
+		this.stopPondering();
+
+		final long[] lRootMoves = new long[GameState.cMaxMoves];
+		if (pState.isEOG() || pState.findPossibleMoves(lRootMoves) == 0) {
+			return;
+		} // End if
+
+		if (this.mPonderer == null) {
+			this.mPonderer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable pTask) {
+					Thread lThread = new Thread(pTask, "Player ponder");
+					lThread.setDaemon(true);
+					return lThread;
+				} // End newThread
+			});
+		} // End if
+
+		this.mStart = System.nanoTime();
+		this.mDeadline = Deadline.fromNow(cPonderMillis);
+		this.mStopped = false;
+		this.mPonder = true;
+		this.mPondered = pState;
+		this.mTable.newSearch();
+		this.mPondering = this.mPonderer.submit(new Runnable() {
+			public void run() {
+				Player.this.search(pState, lRootMoves[0]);
+			} // End run
+		});
+	} // End ponder
+
+	/**
+	 * @return true if pState follows the position of the last ponder
+	 *   search by one move
+	 */
+	private boolean followsPonder(GameState pState) {
+		if (this.mPondered == null) {
+			return false;
+		} // End if
+		long[] lMoves = new long[GameState.cMaxMoves];
+		int lCount = this.mPondered.findPossibleMoves(lMoves);
+		for (int i = 0; i < lCount; i++) {
+			if (new GameState(this.mPondered, lMoves[i]).getKey() == pState.getKey()) {
+				return true;
+			} // End if
+		} // End for
+		return false;
+	} // End followsPonder
+
+	/**
+	 * Stops the ponder search, if one is running, and waits until all of
+	 * its threads have returned
+	 */
+	public void stopPondering() {
+		if (this.mPondering == null) {
+			return;
+		} // End if
+		this.mStopped = true;
+		try {
+			this.mPondering.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Ponder search failed", e.getCause());
+		} // End catch
+		this.mPondering = null;
+		this.mPonder = false;
+	} // End stopPondering
+
+	/**
+	 * Searches pState on all threads until the search is stopped or the
+	 * main searcher is done
+	 *
+	 * @param pDefault the move to play if no iteration completes
+	 * @return the searcher with the deepest completed iteration
+	 */
+	private Searcher search(GameState pState, long pDefault) {
+		// The helpers run until the main searcher stops them
+		ForkJoinTask<?>[] lHelpers = new ForkJoinTask<?>[this.mSearchers.length - 1];
+		for (int i = 1; i < this.mSearchers.length; i++) {
+			final Searcher lHelper = this.mSearchers[i];
+			lHelper.start(pState, pDefault);
+			lHelpers[i - 1] = this.mPool.submit(new Runnable() {
+				public void run() {
+					lHelper.iterate(false);
+				} // End run
+			});
+		} // End for
+
+		Searcher lMain = this.mSearchers[0];
+		lMain.start(pState, pDefault);
+		lMain.iterate(true);
+
+		this.mStopped = true;
+		for (int i = 0; i < lHelpers.length; i++) {
+			lHelpers[i].join();
+		} // End for
+
+		Searcher lBest = lMain;
+		for (int i = 1; i < this.mSearchers.length; i++) {
+			if (this.mSearchers[i].mCompletedDepth > lBest.mCompletedDepth) {
+				lBest = this.mSearchers[i];
+			} // End if
+		} // End for
+		return lBest;
+	} // End search
+
+	/**
+	 * The state of one search thread
+	 *
+	 * Everything a search changes is in here, except for the shared table
+	 * and stop flag: the position it makes and unmakes moves on, and the
+	 * move buffers.
+	 */
+	private class Searcher {
+		private final int mId;
+		private final long[][] mMoves = new long[cMaxPly + 1][GameState.cMaxMoves];
+		private final long[] mEntry = new long[2];
+		private final Network.Stack mStack;	// the network's accumulators, null without one
+		private final MoveOrdering mOrdering = new MoveOrdering(cMaxPly);
+
+		private GameState mState;
+		private long mNodes;
+		private long mProbes;			// table probes in negamax
+		private long mHits;				// of which found an entry
+		private double mBranchingFactor;	// nodes of the last iteration over the one before
+		private int mLastScore;			// score of the last completed root search
+		private int mCompletedDepth;	// depth of the last completed root search
+		private long mBestMove;			// best move of the last completed root search
+
+		Searcher(int pId) {
+			this.mId = pId;
+			this.mStack = (Player.this.mNetwork != null) ? Player.this.mNetwork.new Stack(cMaxPly) : null;
+		} // End constructor Searcher
+
+		/**
+		 * Prepares a search of pState
+		 *
+		 * @param pDefault the move to play if no iteration completes
+		 */
+		void start(GameState pState, long pDefault) {
+			this.mState = new GameState(pState);
+			this.mNodes = 0;
+			this.mProbes = 0;
+			this.mHits = 0;
+			this.mBranchingFactor = 0;
+			this.mCompletedDepth = 0;
+			this.mBestMove = pDefault;
+			this.mOrdering.age();
+		} // End start
+
+		/**
+		 * Searches one ply deeper each iteration until the search is
+		 * stopped or the result is decided
+		 *
+		 * @param pMain true for the main searcher, which also stops when
+		 *   there is no time for another iteration
+		 */
+		void iterate(boolean pMain) {
+			int lOffset = this.mId & 1;
+			long lLastNodes = 0;
+
+			for (int lDepth = 1 + lOffset; lDepth <= Player.this.mMaxDepth; lDepth++) {
+				SearchIterationEvent lEvent = new SearchIterationEvent();
+				lEvent.begin();
+				long lStartNodes = this.mNodes;
+				long lMove = this.searchRoot(this.mState, lDepth);
+				if (Player.this.mStopped) {
+					break;
+				} // End if
+				this.mBestMove = lMove;
+				this.mCompletedDepth = lDepth;
+
+				long lNodes = this.mNodes - lStartNodes;
+				this.mBranchingFactor = (lLastNodes > 0) ? (double) lNodes / lLastNodes : 0;
+				lLastNodes = lNodes;
+				if (pMain && lEvent.shouldCommit()) {
+					lEvent.depth = lDepth;
+					lEvent.score = this.mLastScore;
+					lEvent.bestMove = Move.valueOf(lMove).toMessage();
+					lEvent.nodes = lNodes;
+					lEvent.branchingFactor = this.mBranchingFactor;
+					lEvent.pondering = Player.this.mPonder;
+					lEvent.commit();
+				} // End if
+
+				if (Math.abs(this.mLastScore) > cWin - cWinPlies) {
+					break;
+				} // End if
+
+				// The next iteration takes at least as long as all the
+				// earlier ones, so only start it if that fits before the
+				// soft limit
+				if (pMain && Player.this.mDeadline.softNanosUntil()
+						< System.nanoTime() - Player.this.mStart) {
+					break;
+				} // End if
+			} // End for
+		} // End iterate
+
+		/**
+		 * Searches the root to a fixed depth
+		 *
+		 * @return the best move found. Only valid if the search was not stopped.
+		 */
+		private long searchRoot(GameState pState, int pDepth) {
+			long[] lMoves = this.mMoves[0];
+			int lCount = pState.findPossibleMoves(lMoves);
+			int lSorted = 0;
+			if (Player.this.mTable.probe(pState.getKey(), this.mEntry)) {
+				lSorted = MoveOrdering.toFront(lMoves, lCount, this.mEntry[1]);
+			} // End if
+			this.mOrdering.order(lMoves, lSorted, lCount, 0, pState);
+
+			int lAlpha = -cInfinity;
+			long lBestMove = lMoves[0];
+			if (this.mStack != null) {
+				this.mStack.reset(pState);
+			} // End if
+
+			for (int i = 0; i < lCount; i++) {
+				pState.doMove(lMoves[i]);
+				if (this.mStack != null) {
+					this.mStack.moved(1, pState);
+				} // End if
+				int lScore = -this.negamax(pState, pDepth - 1, 1, -cInfinity, -lAlpha);
+				pState.undoMove();
+
+				if (Player.this.mStopped) {
+					return lBestMove;
+				} // End if
+
+				if (lScore > lAlpha) {
+					lAlpha = lScore;
+					lBestMove = lMoves[i];
+				} // End if
+			} // End for
+
+			this.mLastScore = lAlpha;
+			Player.this.mTable.store(pState.getKey(), pDepth, TranspositionTable.cExact,
+					Player.toTable(lAlpha, 0), lBestMove);
+			return lBestMove;
+		} // End searchRoot
+
+		/**
+		 * Alpha-beta search in negamax form
+		 *
+		 * @param pState the position, which is changed and restored
+		 * @param pDepth the remaining depth
+		 * @param pPly the distance from the root
+		 * @param pAlpha the lower bound of the window
+		 * @param pBeta the upper bound of the window
+		 * @return the score of the position for the player to move
+		 */
+		private int negamax(GameState pState, int pDepth, int pPly, int pAlpha, int pBeta) {
+			if (this.poll()) {
+				return 0;
+			} // End if
+
+			// Endgames in the tablebase don't need searching. Its wins and
+			// losses only hold if they end before the draw counter does.
+			Tablebase lTablebase = Player.this.mTablebase;
+			if (lTablebase != null && Integer.bitCount(pState.getRed() | pState.getWhite())
+					<= lTablebase.getMaxPieces()) {
+				int lValue = lTablebase.probe(pState);
+				if (lValue == 0) {
+					return 0;
+				} else if (lValue != Tablebase.cNotFound
+						&& Tablebase.distance(lValue) < pState.getMovesUntilDraw()) {
+					return (lValue > 0) ? cWin - pPly - Tablebase.distance(lValue)
+							: -cWin + pPly + Tablebase.distance(lValue);
+				} // End else
+			} // End if
+
+			// quiesce() finds the end of game itself, without generating
+			// the normal moves
+			if (pDepth <= 0 || pPly >= cMaxPly) {
+				return this.quiesce(pState, pPly, pAlpha, pBeta);
+			} // End if
+
+			long[] lMoves = this.mMoves[pPly];
+			int lCount = pState.findPossibleMoves(lMoves);
+
+			// End of game: the only move is a draw or an admitted loss
+			if (lCount == 1 && Move.packedType(lMoves[0]) < Move.MoveType.MOVE_NORMAL.getInternalValue()) {
+				return (Move.packedType(lMoves[0]) == Move.MoveType.MOVE_DRAW.getInternalValue())
+						? 0 : -cWin + pPly;
+			} // End if
+
+			// Use what we know about this position
+			TranspositionTable lTable = Player.this.mTable;
+			long lKey = pState.getKey();
+			int lAlpha = pAlpha;
+			int lBeta = pBeta;
+			int lSorted = 0;	// moves in front that are not to be sorted
+			this.mProbes++;
+			if (lTable.probe(lKey, this.mEntry)) {
+				long lData = this.mEntry[0];
+				this.mHits++;
+				lSorted = MoveOrdering.toFront(lMoves, lCount, this.mEntry[1]);
+
+				if (TranspositionTable.depth(lData) >= pDepth) {
+					int lScore = Player.fromTable(TranspositionTable.score(lData), pPly);
+					int lBound = TranspositionTable.bound(lData);
+					if (lBound == TranspositionTable.cExact) {
+						return lScore;
+					} else if (lBound == TranspositionTable.cLower) {
+						lAlpha = Math.max(lAlpha, lScore);
+					} else {
+						lBeta = Math.min(lBeta, lScore);
+					} // End else
+					if (lAlpha >= lBeta) {
+						return lScore;
+					} // End if
+				} // End if
+			} // End if
+
+			int lBest = -cInfinity;
+			long lBestMove = TranspositionTable.cNoMove;
+
+			for (int i = 0; i < lCount; i++) {
+				// The rest are ranked once the table's move didn't cut
+				if (i == lSorted) {
+					this.mOrdering.order(lMoves, i, lCount, pPly, pState);
+				} // End if
+
+				pState.doMove(lMoves[i]);
+				if (this.mStack != null) {
+					this.mStack.moved(pPly + 1, pState);
+				} // End if
+				int lScore = -this.negamax(pState, pDepth - 1, pPly + 1, -lBeta, -lAlpha);
+				pState.undoMove();
+
+				if (Player.this.mStopped) {
+					return 0;
+				} // End if
+
+				if (lScore > lBest) {
+					lBest = lScore;
+					lBestMove = lMoves[i];
+					if (lScore > lAlpha) {
+						lAlpha = lScore;
+						if (lAlpha >= lBeta) {
+							this.mOrdering.cutoff(lMoves[i], pPly, pDepth, pState);
+							break;
+						} // End if
+					} // End if
+				} // End if
+			} // End for
+
+			int lBound = (lBest >= lBeta) ? TranspositionTable.cLower
+					: (lBest > pAlpha) ? TranspositionTable.cExact : TranspositionTable.cUpper;
+			lTable.store(lKey, pDepth, lBound, Player.toTable(lBest, pPly), lBestMove);
+			return lBest;
+		} // End negamax
+
+		/**
+		 * Searches the jumps left at the leaves of negamax()
+		 *
+		 * A position with a jump pending can't be evaluated: the jump is
+		 * forced and will change the material. So the search goes on along
+		 * jumps only, until the player to move has none. There the static
+		 * score is used (stand pat), since that player could only make
+		 * quiet moves, unless they have none either and so have lost.
+		 * Passing isn't allowed while jumps are pending, so all of them are
+		 * searched, except those that couldn't reach pAlpha even by
+		 * capturing kings only and promoting (delta pruning).
+		 *
+		 * @return the score of the position for the player to move
+		 */
+		private int quiesce(GameState pState, int pPly, int pAlpha, int pBeta) {
+			if (this.poll()) {
+				return 0;
+			} // End if
+			if (pState.getMovesUntilDraw() <= 0) {
+				return 0;
+			} // End if
+
+			if (pPly >= cMaxPly) {
+				return this.evaluate(pState, pPly);
+			} // End if
+
+			long[] lMoves = this.mMoves[pPly];
+			int lCount = pState.findJumps(lMoves);
+			if (SearchMetrics.cEnabled) {
+				SearchMetrics.cMoveGenerations.increment();
+			} // End if
+			if (lCount == 0) {
+				return pState.canStep() ? this.evaluate(pState, pPly) : -cWin + pPly;
+			} // End if
+			int lStandPat = this.evaluate(pState, pPly);
+
+			int lAlpha = pAlpha;
+			int lBest = -cInfinity;
+			this.mOrdering.order(lMoves, 0, lCount, pPly, pState);
+			for (int i = 0; i < lCount; i++) {
+				int lGain = Move.packedType(lMoves[i]) * Evaluator.cKingValue
+						+ Evaluator.cKingValue - Evaluator.cManValue;
+				if (lStandPat + lGain + cDeltaMargin <= lAlpha) {
+					lBest = Math.max(lBest, lStandPat + lGain + cDeltaMargin);
+					continue;
+				} // End if
+
+				pState.doMove(lMoves[i]);
+				if (this.mStack != null) {
+					this.mStack.moved(pPly + 1, pState);
+				} // End if
+				int lScore = -this.quiesce(pState, pPly + 1, -pBeta, -lAlpha);
+				pState.undoMove();
+
+				if (Player.this.mStopped) {
+					return 0;
+				} // End if
+
+				if (lScore > lBest) {
+					lBest = lScore;
+					if (lScore > lAlpha) {
+						lAlpha = lScore;
+						if (lAlpha >= pBeta) {
+							break;
+						} // End if
+					} // End if
+				} // End if
+			} // End for
+			return lBest;
+		} // End quiesce
+
+		/**
+		 * @return the static score of pState, the position at pPly, for
+		 *   the player to move
+		 */
+		private int evaluate(GameState pState, int pPly) {
+			return (this.mStack != null) ? this.mStack.evaluate(pPly, pState) : Evaluator.evaluate(pState);
+		} // End evaluate
+
+		/**
+		 * Counts a node and checks the deadline every cCheckInterval nodes
+		 *
+		 * @return true if the search has been stopped
+		 */
+		private boolean poll() {
+			if ((++this.mNodes % cCheckInterval) == 0
+					&& Player.this.mDeadline.isPastHard()) {
+				Player.this.mStopped = true;
+			} // End if
+			return Player.this.mStopped;
+		} // End poll
+	} // End class Searcher
+
+	/**
+	 * Win scores depend on the distance from the root. The table stores
+	 * them as distance from the node instead, so they stay valid when the
+	 * position is reached at another ply.
+	 */
+	static int toTable(int pScore, int pPly) {
+		if (pScore > cWin - cWinPlies) {
+			return pScore + pPly;
+		} else if (pScore < -cWin + cWinPlies) {
+			return pScore - pPly;
+		} // End else
+		return pScore;
+	} // End toTable
+
+	static int fromTable(int pScore, int pPly) {
+		if (pScore > cWin - cWinPlies) {
+			return pScore - pPly;
+		} else if (pScore < -cWin + cWinPlies) {
+			return pScore + pPly;
+		} // End else
+		return pScore;
+	} // End fromTable
+} // End class Player
@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for each iteration the main searcher
+ * completes (see Player). Its duration is the time of the iteration.
+ */
+@Name("checkers.SearchIteration")
+@Label("Search Iteration")
+@Category("Checkers")
+@Description("An iteration of the main searcher")
+public class SearchIterationEvent extends jdk.jfr.Event {
+	@Label("Depth")
+	int depth;
+
+	@Label("Score")
+	@Description("For the player to move")
+	int score;
+
+	@Label("Best Move")
+	String bestMove;
+
+	@Label("Nodes")
+	@Description("Searched by the main searcher in this iteration")
+	long nodes;
+
+	@Label("Branching Factor")
+	@Description("Nodes of this iteration over those of the one before")
+	double branchingFactor;
+
+	@Label("Pondering")
+	@Description("Searching on the opponent's time")
+	boolean pondering;
+} // End class SearchIterationEvent
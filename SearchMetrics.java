@@ -0,0 +1,134 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what the players do, readable from a running JVM
+ *
+ * Counting is off unless the JVM runs with -Dcheckers.metrics=true. Then
+ * Player registers the counters as the MBean cObjectName, which jconsole or
+ * any JMX client can read. cEnabled is a static final, so when counting
+ * is off the JIT drops the counting code from the hot paths altogether.
+ *
+ * The search also emits the Java Flight Recorder events
+ * SearchIterationEvent and MoveCompletedEvent, whether counting is on or
+ * not. They cost nothing unless a recording is running.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+	static final boolean cEnabled = Boolean.getBoolean("checkers.metrics");
+	static final String cObjectName = "checkers:type=SearchMetrics";
+
+	/**
+	 * Counted where they happen, on every thread
+	 */
+	static final LongAdder cMoveGenerations = new LongAdder();
+	static final LongAdder cSuccessors = new LongAdder();
+
+	/**
+	 * The one instance, which holds the figures of the moves
+	 */
+	private static final SearchMetrics cInstance = new SearchMetrics();
+
+	private long mMovesSearched;
+	private long mNodes;
+	private long mDepths;
+	private long mNodesPerSecond;
+	private int mLastDepth;
+	private double mBranchingFactor;
+	private double mTableHitRate;
+	private long mLastMarginMillis;
+	private long mMinMarginMillis = Long.MAX_VALUE;
+
+	private SearchMetrics() {
+	} // End constructor SearchMetrics
+
+	/**
+	 * Registers the MBean, unless it already is
+	 */
+	static synchronized void register() {
+		try {
+			ObjectName lName = new ObjectName(cObjectName);
+			MBeanServer lServer = ManagementFactory.getPlatformMBeanServer();
+			if (!lServer.isRegistered(lName)) {
+				lServer.registerMBean(cInstance, lName);
+			} // End if
+		} catch (JMException e) {
+			System.err.println("Not registering search metrics: " + e.getMessage());
+		} // End catch
+	} // End register
+
+	/**
+	 * Records a move chosen by a search. Only call this if cEnabled.
+	 *
+	 * @param pDepth the depth of the iteration that chose the move
+	 * @param pNodes the nodes searched by all threads
+	 * @param pNanos the time the search took
+	 * @param pBranchingFactor see getBranchingFactor()
+	 * @param pTableHitRate see getTableHitRate()
+	 * @param pMarginNanos the time left before the deadline
+	 */
+	static void moveCompleted(int pDepth, long pNodes, long pNanos,
+			double pBranchingFactor, double pTableHitRate, long pMarginNanos) {
+		cInstance.record(pDepth, pNodes, pNanos, pBranchingFactor, pTableHitRate, pMarginNanos);
+	} // End moveCompleted
+
+	private synchronized void record(int pDepth, long pNodes, long pNanos,
+			double pBranchingFactor, double pTableHitRate, long pMarginNanos) {
+		this.mMovesSearched++;
+		this.mNodes += pNodes;
+		this.mDepths += pDepth;
+		this.mNodesPerSecond = (pNanos > 0) ? pNodes * 1000000000L / pNanos : 0;
+		this.mLastDepth = pDepth;
+		this.mBranchingFactor = pBranchingFactor;
+		this.mTableHitRate = pTableHitRate;
+		this.mLastMarginMillis = pMarginNanos / 1000000;
+		this.mMinMarginMillis = Math.min(this.mMinMarginMillis, this.mLastMarginMillis);
+	} // End record
+
+	public synchronized long getMovesSearched() {
+		return this.mMovesSearched;
+	} // End getMovesSearched
+
+	public synchronized long getNodes() {
+		return this.mNodes;
+	} // End getNodes
+
+	public synchronized long getNodesPerSecond() {
+		return this.mNodesPerSecond;
+	} // End getNodesPerSecond
+
+	public synchronized int getLastDepth() {
+		return this.mLastDepth;
+	} // End getLastDepth
+
+	public synchronized double getAverageDepth() {
+		return (this.mMovesSearched > 0) ? (double) this.mDepths / this.mMovesSearched : 0;
+	} // End getAverageDepth
+
+	public synchronized double getBranchingFactor() {
+		return this.mBranchingFactor;
+	} // End getBranchingFactor
+
+	public synchronized double getTableHitRate() {
+		return this.mTableHitRate;
+	} // End getTableHitRate
+
+	public synchronized long getLastDeadlineMarginMillis() {
+		return this.mLastMarginMillis;
+	} // End getLastDeadlineMarginMillis
+
+	public synchronized long getMinDeadlineMarginMillis() {
+		return (this.mMovesSearched > 0) ? this.mMinMarginMillis : 0;
+	} // End getMinDeadlineMarginMillis
+
+	public long getMoveGenerations() {
+		return cMoveGenerations.sum();
+	} // End getMoveGenerations
+
+	public long getSuccessors() {
+		return cSuccessors.sum();
+	} // End getSuccessors
+} // End class SearchMetrics
@@ -0,0 +1,62 @@
+/**
+ * The attributes of SearchMetrics, as seen by JMX clients
+ */
+public interface SearchMetricsMBean {
+	/**
+	 * @return the number of moves chosen by a search
+	 */
+	long getMovesSearched();
+
+	/**
+	 * @return the nodes searched by all threads over all moves
+	 */
+	long getNodes();
+
+	/**
+	 * @return the nodes per second of the last move
+	 */
+	long getNodesPerSecond();
+
+	/**
+	 * @return the depth of the iteration that chose the last move
+	 */
+	int getLastDepth();
+
+	/**
+	 * @return the mean depth of the iterations that chose the moves
+	 */
+	double getAverageDepth();
+
+	/**
+	 * @return the nodes of the last iteration over those of the one
+	 *   before, for the last move
+	 */
+	double getBranchingFactor();
+
+	/**
+	 * @return the share of table probes that found an entry, for the last move
+	 */
+	double getTableHitRate();
+
+	/**
+	 * @return the milliseconds that were left before the deadline when the
+	 *   last move was chosen
+	 */
+	long getLastDeadlineMarginMillis();
+
+	/**
+	 * @return the fewest milliseconds that were left before a deadline
+	 */
+	long getMinDeadlineMarginMillis();
+
+	/**
+	 * @return the calls of GameState.findPossibleMoves(), and of findJumps()
+	 *   in quiescence search
+	 */
+	long getMoveGenerations();
+
+	/**
+	 * @return the states created from another one and a move
+	 */
+	long getSuccessors();
+} // End interface SearchMetricsMBean
@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays Player against itself and records the positions, to train
+ * evaluation weights on
+ *
+ * Games run in parallel, one single threaded Player per game thread, with
+ * a fixed search depth so that positions come fast. Each game starts with
+ * a few random moves. Every position that Player searched is recorded with
+ * its search score and the result of the game. Positions of the random
+ * plies, and positions with a single legal move or from the opening book,
+ * have no score and are left out.
+ *
+ * Records are written to files <out>-<n>.bin, a new one whenever the
+ * current one reaches the rotation size. A file starts with a header:
+ *   int   cMagic ("CKSP")
+ *   int   cVersion
+ *   int   cRecordBytes
+ * followed by records of cRecordBytes bytes:
+ *   int   red men and kings (bit i is cell i + 1)
+ *   int   white men and kings
+ *   int   kings
+ *   short search score, for the player to move (see Player)
+ *   byte  bit 0: white to move, bits 1-2: result for the player to move
+ *         (0 loss, 1 draw, 2 win)
+ *   byte  moves until draw
+ * All values are big endian.
+ *
+ * Usage:
+ *   java SelfPlay <games> [threads <n>] [depth <n>] [time <ms>] [hash <MB>]
+ *       [random <plies>] [seed <n>] [out <prefix>] [rotate <MB>]
+ *
+ * - threads is the number of games played at once (default: one per core)
+ * - hash is the size of each Player's transposition table (default 16 MB).
+ *   There is a Player per game thread, so the heap needs at least
+ *   threads * hash MB.
+ * - depth is the search depth of every move (default 6)
+ * - time is a limit on the thinking time per move (default 1000 ms)
+ * - random is the number of random plies each game starts with (default 6)
+ * - out is the prefix of the output files (default selfplay)
+ * - rotate is the size of an output file (default 256 MB)
+ */
+public class SelfPlay {
+	static final int cMagic = 0x434B5350;	// "CKSP"
+	static final int cVersion = 1;
+	static final int cRecordBytes = 16;
+	static final int cHeaderBytes = 12;
+	private static final int cFlagsOffset = 14;	// of the flags in a record
+
+	static final int cLoss = 0;
+	static final int cDraw = 1;
+	static final int cWin = 2;
+
+	/**
+	 * Default size of each Player's transposition table. Player's own
+	 * default is meant for one Player per JVM.
+	 */
+	private static final int cTableMB = 16;
+
+	/**
+	 * Size of the buffer between the games and the channel
+	 */
+	private static final int cBufferBytes = 1 << 20;
+
+	/**
+	 * Writes records to size-rotated files
+	 *
+	 * All game threads share one writer. Each game is appended as a whole,
+	 * under the writer's lock, to a direct buffer that is written to the
+	 * channel when full.
+	 */
+	static class RecordWriter implements AutoCloseable {
+		private final String mPrefix;
+		private final long mRotateBytes;
+		private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(cBufferBytes);
+		private FileChannel mChannel;
+		private long mFileBytes;		// written to the current file, with the buffer
+		private int mFiles;
+		private long mRecords;
+
+		/**
+		 * @param pPrefix the prefix of the file names
+		 * @param pRotateBytes the size at which the next file is started
+		 */
+		RecordWriter(String pPrefix, long pRotateBytes) {
+			this.mPrefix = pPrefix;
+			this.mRotateBytes = Math.max(pRotateBytes, cHeaderBytes + cRecordBytes);
+		} // End constructor RecordWriter
+
+		/**
+		 * Appends the records in pRecords, from its position to its limit
+		 */
+		synchronized void write(ByteBuffer pRecords) throws IOException {
+			while (pRecords.hasRemaining()) {
+				if (this.mChannel == null || this.mFileBytes + cRecordBytes > this.mRotateBytes) {
+					this.rotate();
+				} // End if
+				if (this.mBuffer.remaining() < cRecordBytes) {
+					this.drain();
+				} // End if
+
+				// As many whole records as fit in the buffer and the file
+				long lRoom = Math.min(this.mBuffer.remaining(), this.mRotateBytes - this.mFileBytes);
+				int lBytes = (int) Math.min(pRecords.remaining(), lRoom / cRecordBytes * cRecordBytes);
+				int lLimit = pRecords.limit();
+				pRecords.limit(pRecords.position() + lBytes);
+				this.mBuffer.put(pRecords);
+				pRecords.limit(lLimit);
+				this.mFileBytes += lBytes;
+				this.mRecords += lBytes / cRecordBytes;
+			} // End while
+		} // End write
+
+		synchronized long getRecords() {
+			return this.mRecords;
+		} // End getRecords
+
+		/**
+		 * Closes the current file and starts the next one
+		 */
+		private void rotate() throws IOException {
+			this.closeFile();
+			String lName = this.mPrefix + "-" + this.mFiles++ + ".bin";
+			this.mChannel = FileChannel.open(Paths.get(lName), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			this.mBuffer.putInt(cMagic).putInt(cVersion).putInt(cRecordBytes);
+			this.mFileBytes = cHeaderBytes;
+		} // End rotate
+
+		/**
+		 * Writes the buffer to the current file
+		 */
+		private void drain() throws IOException {
+			this.mBuffer.flip();
+			while (this.mBuffer.hasRemaining()) {
+				this.mChannel.write(this.mBuffer);
+			} // End while
+			this.mBuffer.clear();
+		} // End drain
+
+		private void closeFile() throws IOException {
+			if (this.mChannel != null) {
+				this.drain();
+				this.mChannel.close();
+				this.mChannel = null;
+			} // End if
+		} // End closeFile
+
+		@Override
+		public synchronized void close() throws IOException {
+			this.closeFile();
+		} // End close
+	} // End class RecordWriter
+
+	private final RecordWriter mWriter;
+	private final long mTime;
+	private final int mRandomPlies;
+	private final long mSeed;
+
+	/**
+	 * A Player and record buffer per game thread
+	 */
+	private final ThreadLocal<Player> mPlayers;
+	private final ThreadLocal<ByteBuffer> mRecords = new ThreadLocal<ByteBuffer>() {
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(cRecordBytes * 512);
+		} // End initialValue
+	};
+
+	/**
+	 * @param pWriter where the records go
+	 * @param pDepth the search depth of every move
+	 * @param pTime the most thinking time per move in milliseconds
+	 * @param pTableMB the size of the transposition table of each Player
+	 * @param pRandomPlies the number of random plies each game starts with
+	 * @param pSeed the seed of the random plies
+	 */
+	SelfPlay(RecordWriter pWriter, final int pDepth, long pTime, final int pTableMB, int pRandomPlies,
+			long pSeed) {
+		this.mWriter = pWriter;
+		this.mTime = pTime;
+		this.mRandomPlies = pRandomPlies;
+		this.mSeed = pSeed;
+		this.mPlayers = new ThreadLocal<Player>() {
+			protected Player initialValue() {
+				Player lPlayer = new Player(1, pTableMB);
+				lPlayer.setMaxDepth(pDepth);
+				return lPlayer;
+			} // End initialValue
+		};
+	} // End constructor SelfPlay
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: java SelfPlay <games> [threads <n>] [depth <n>] [time <ms>]"
+					+ " [hash <MB>] [random <plies>] [seed <n>] [out <prefix>] [rotate <MB>]");
+			return;
+		} // End if
+
+		// Parse parameters
+		int games = Integer.parseInt(args[0]);
+		int threads = Runtime.getRuntime().availableProcessors();
+		int depth = 6;
+		long time = 1000;
+		int hash = cTableMB;
+		int random = 6;
+		long seed = System.nanoTime();
+		String out = "selfplay";
+		long rotate = 256;
+
+		for (int i = 1; i < args.length; ++i) {
+			String param = args[i];
+
+			if ((param.equals("threads") || param.equals("t")) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (param.equals("depth") && i + 1 < args.length) {
+				depth = Integer.parseInt(args[++i]);
+			} else if (param.equals("time") && i + 1 < args.length) {
+				time = Long.parseLong(args[++i]);
+			} else if (param.equals("hash") && i + 1 < args.length) {
+				hash = Integer.parseInt(args[++i]);
+			} else if (param.equals("random") && i + 1 < args.length) {
+				random = Integer.parseInt(args[++i]);
+			} else if (param.equals("seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (param.equals("out") && i + 1 < args.length) {
+				out = args[++i];
+			} else if (param.equals("rotate") && i + 1 < args.length) {
+				rotate = Long.parseLong(args[++i]);
+			} else {
+				System.err.println("Unknown parameter: '" + args[i] + "'");
+				return;
+			}
+		}
+
+		final AtomicInteger finished = new AtomicInteger();
+		final AtomicLong failures = new AtomicLong();
+		final long start = System.nanoTime();
+
+		try (RecordWriter writer = new RecordWriter(out, rotate << 20)) {
+			final SelfPlay selfPlay = new SelfPlay(writer, depth, time, hash, random, seed);
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			for (int i = 0; i < games; i++) {
+				final int game = i;
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							selfPlay.play(game);
+						} catch (IOException e) {
+							failures.incrementAndGet();
+							System.err.println("Game " + game + ": " + e);
+						} // End catch
+
+						int done = finished.incrementAndGet();
+						if (done % 100 == 0) {
+							double hours = (System.nanoTime() - start) / 3.6e12;
+							System.err.println(done + " games, " + writer.getRecords() + " positions ("
+									+ String.format("%.0f", writer.getRecords() / hours) + " per hour)");
+						} // End if
+					} // End run
+				});
+			} // End for
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+
+			double hours = (System.nanoTime() - start) / 3.6e12;
+			System.err.println("Wrote " + writer.getRecords() + " positions of " + finished.get()
+					+ " games to " + out + "-*.bin (" + String.format("%.0f", writer.getRecords() / hours)
+					+ " per hour)" + ((failures.get() > 0) ? ", " + failures.get() + " games failed" : ""));
+		} // End try
+	} // End main
+
+	/**
+	 * Plays one game and writes its records
+	 *
+	 * @param pGame the number of the game, which seeds its random plies
+	 */
+	void play(int pGame) throws IOException {
+		Player lPlayer = this.mPlayers.get();
+		ByteBuffer lRecords = this.mRecords.get();
+		lRecords.clear();
+
+		Random lRandom = new Random(this.mSeed + pGame);
+		long[] lMoves = new long[GameState.cMaxMoves];
+		GameState lState = new GameState();
+		for (int i = 0; i < this.mRandomPlies && !lState.isEOG(); i++) {
+			int lCount = lState.findPossibleMoves(lMoves);
+			lState = new GameState(lState, lMoves[lRandom.nextInt(lCount)]);
+		} // End for
+
+		// Record each position with its score, and fill in the results at the end
+		while (!lState.isEOG()) {
+			GameState lNext = lPlayer.play(lState, Deadline.fromNow(this.mTime));
+			int lScore = lPlayer.getLastScore();
+			if (lScore != Player.cNoScore) {
+				if (lRecords.remaining() < cRecordBytes) {
+					lRecords = ByteBuffer.allocate(2 * lRecords.capacity()).put(lRecords.flip());
+					this.mRecords.set(lRecords);
+				} // End if
+				lRecords.putInt(lState.getRed());
+				lRecords.putInt(lState.getWhite());
+				lRecords.putInt(lState.getKings());
+				lRecords.putShort((short) Math.max(Short.MIN_VALUE, Math.min(lScore, Short.MAX_VALUE)));
+				lRecords.put((byte) ((lState.getNextPlayer() == Constants.CELL_WHITE) ? 1 : 0));
+				lRecords.put((byte) lState.getMovesUntilDraw());
+			} // End if
+			lState = lNext;
+		} // End while
+
+		int lRedResult = lState.isRedWin() ? cWin : lState.isWhiteWin() ? cLoss : cDraw;
+		for (int lFlags = cFlagsOffset; lFlags < lRecords.position(); lFlags += cRecordBytes) {
+			boolean lWhite = (lRecords.get(lFlags) & 1) != 0;
+			int lResult = lWhite ? cWin - lRedResult : lRedResult;
+			lRecords.put(lFlags, (byte) (lRecords.get(lFlags) | (lResult << 1)));
+		} // End for
+
+		lRecords.flip();
+		this.mWriter.write(lRecords);
+	} // End play
+} // End class SelfPlay
@@ -0,0 +1,372 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Exact values of endgame positions, read from a file written by
+ * TablebaseGenerator
+ *
+ * The file is memory-mapped and read in place, so opening it costs
+ * nothing on the heap and the operating system shares it between
+ * processes. It is safe to probe from several threads.
+ *
+ * Positions are grouped by material signature: the number of red men, red
+ * kings, white men and white kings. Within a signature a position has a
+ * combinatorial index (see index()), and the file holds one byte per index:
+ *
+ *   0       draw
+ *   v > 0   the player to move wins in v - 1 plies
+ *   v < 0   the player to move loses in -v - 1 plies
+ *
+ * A position and the same position with the board rotated and the
+ * colours swapped (see GameState.reversed()) have the same value, so only
+ * signatures that are not above their mirror() are stored. The others are
+ * looked up through locate().
+ *
+ * The values ignore the draw counter (see GameState.cMovesUntilDraw): a
+ * win that takes more plies than the counter allows is a draw in the game.
+ *
+ * File layout (big-endian):
+ *   int    cMagic
+ *   int    cVersion
+ *   int    the largest number of pieces in the file
+ *   int    the number of signatures n
+ *   n x    int signature, long offset of its values in the file
+ *   the values
+ */
+public class Tablebase {
+	static final int cMagic = 0x434B5442;	// "CKTB"
+	static final int cVersion = 2;
+
+	/**
+	 * Returned by probe() for positions that are not in the file
+	 */
+	public static final int cNotFound = Integer.MIN_VALUE;
+
+	/**
+	 * Men can't stand on the row where they promote, so red men use the
+	 * first 28 squares and white men the last 28.
+	 */
+	static final int cManSquares = 28;
+	static final int cWhiteManShift = GameState.cSquares - cManSquares;
+
+	/**
+	 * The longest distance to the end of a game. Values, which are
+	 * distances plus one, have to fit in a byte.
+	 */
+	static final int cMaxDistance = Byte.MAX_VALUE - 1;
+
+	/**
+	 * Signatures pack the four piece counts in 4 bits each
+	 */
+	static final int cSignatures = 1 << 16;
+
+	/**
+	 * cChoose[n][k] is the binomial coefficient n over k
+	 */
+	static final long[][] cChoose = new long[GameState.cSquares + 1][GameState.cSquares + 1];
+	static {
+		for (int n = 0; n <= GameState.cSquares; n++) {
+			cChoose[n][0] = 1;
+			for (int k = 1; k <= n; k++) {
+				cChoose[n][k] = cChoose[n - 1][k - 1] + ((k < n) ? cChoose[n - 1][k] : 0);
+			} // End for
+		} // End for
+	} // End static
+
+	private final MappedByteBuffer mData;
+	private final long[] mOffsets = new long[cSignatures];
+	private final int mMaxPieces;
+
+	/**
+	 * Maps a tablebase file
+	 *
+	 * @param pFile the file written by TablebaseGenerator
+	 * @throws IOException if the file can't be read or is not a tablebase
+	 */
+	public Tablebase(File pFile) throws IOException {
+		try (RandomAccessFile lFile = new RandomAccessFile(pFile, "r");
+				FileChannel lChannel = lFile.getChannel()) {
+			if (lChannel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Tablebase too large to map: " + pFile);
+			} // End if
+			this.mData = lChannel.map(FileChannel.MapMode.READ_ONLY, 0, lChannel.size());
+		} // End try
+
+		if (this.mData.getInt(0) != cMagic || this.mData.getInt(4) != cVersion) {
+			throw new IOException("Not a tablebase: " + pFile);
+		} // End if
+		this.mMaxPieces = this.mData.getInt(8);
+
+		Arrays.fill(this.mOffsets, -1);
+		int lCount = this.mData.getInt(12);
+		for (int i = 0; i < lCount; i++) {
+			int lEntry = 16 + 12 * i;
+			this.mOffsets[this.mData.getInt(lEntry)] = this.mData.getLong(lEntry + 4);
+		} // End for
+	} // End constructor Tablebase
+
+	/**
+	 * @return the largest number of pieces on the board that the file covers
+	 */
+	public int getMaxPieces() {
+		return this.mMaxPieces;
+	} // End getMaxPieces
+
+	/**
+	 * Looks up a position
+	 *
+	 * @return the value of the position for the player to move, in the form
+	 *   described above, or cNotFound
+	 */
+	public int probe(GameState pState) {
+		int lRed = pState.getRed();
+		int lWhite = pState.getWhite();
+		int lKings = pState.getKings();
+
+		// Men on their promotion row only occur in set up positions
+		if (Integer.bitCount(lRed | lWhite) > this.mMaxPieces
+				|| (lRed & ~lKings & GameState.cRedKingRow) != 0
+				|| (lWhite & ~lKings & GameState.cWhiteKingRow) != 0) {
+			return cNotFound;
+		} // End if
+
+		long lLocation = Tablebase.locate(lRed, lWhite, lKings, pState.getNextPlayer());
+		long lOffset = this.mOffsets[Tablebase.locatedSignature(lLocation)];
+		if (lOffset < 0) {
+			return cNotFound;
+		} // End if
+		return this.mData.get((int) (lOffset + Tablebase.locatedIndex(lLocation)));
+	} // End probe
+
+	/**
+	 * @return the number of plies to the end of the game of a value
+	 *   returned by probe(), other than 0 and cNotFound
+	 */
+	public static int distance(int pValue) {
+		return Math.abs(pValue) - 1;
+	} // End distance
+
+	/**
+	 * @return the material signature of a position
+	 */
+	static int signature(int pRed, int pWhite, int pKings) {
+		return Integer.bitCount(pRed & ~pKings)
+				| (Integer.bitCount(pRed & pKings) << 4)
+				| (Integer.bitCount(pWhite & ~pKings) << 8)
+				| (Integer.bitCount(pWhite & pKings) << 12);
+	} // End signature
+
+	/**
+	 * @return the signature of the positions with the colours swapped
+	 */
+	static int mirror(int pSignature) {
+		return ((pSignature & 0xFF) << 8) | (pSignature >>> 8);
+	} // End mirror
+
+	/**
+	 * @return true if the positions of a signature are stored, false if
+	 *   they are looked up as their mirror
+	 */
+	static boolean isStored(int pSignature) {
+		return pSignature <= Tablebase.mirror(pSignature);
+	} // End isStored
+
+	/**
+	 * Finds where the value of a position is stored, mirroring it if its
+	 * signature is not stored
+	 *
+	 * @return the stored signature and the index in it, to be taken apart
+	 *   with locatedSignature() and locatedIndex()
+	 */
+	static long locate(int pRed, int pWhite, int pKings, int pNextPlayer) {
+		int lSignature = Tablebase.signature(pRed, pWhite, pKings);
+		if (Tablebase.isStored(lSignature)) {
+			return ((long) lSignature << 48) | Tablebase.index(pRed, pWhite, pKings, pNextPlayer);
+		} // End if
+
+		// Rotating the board maps cell i to cell 33-i, i.e. reverses the bits
+		return ((long) Tablebase.mirror(lSignature) << 48)
+				| Tablebase.index(Integer.reverse(pWhite), Integer.reverse(pRed), Integer.reverse(pKings),
+						pNextPlayer ^ (Constants.CELL_RED | Constants.CELL_WHITE));
+	} // End locate
+
+	static int locatedSignature(long pLocation) {
+		return (int) (pLocation >>> 48);
+	} // End locatedSignature
+
+	static long locatedIndex(long pLocation) {
+		return pLocation & ((1L << 48) - 1);
+	} // End locatedIndex
+
+	static int redMen(int pSignature) {
+		return pSignature & 0xF;
+	} // End redMen
+
+	static int redKings(int pSignature) {
+		return (pSignature >>> 4) & 0xF;
+	} // End redKings
+
+	static int whiteMen(int pSignature) {
+		return (pSignature >>> 8) & 0xF;
+	} // End whiteMen
+
+	static int whiteKings(int pSignature) {
+		return (pSignature >>> 12) & 0xF;
+	} // End whiteKings
+
+	/**
+	 * @return the number of pieces of a signature
+	 */
+	static int pieces(int pSignature) {
+		return Tablebase.redMen(pSignature) + Tablebase.redKings(pSignature)
+				+ Tablebase.whiteMen(pSignature) + Tablebase.whiteKings(pSignature);
+	} // End pieces
+
+	/**
+	 * @return the number of indices of a signature, both players to move
+	 */
+	static long size(int pSignature) {
+		int lMen = Tablebase.redMen(pSignature) + Tablebase.whiteMen(pSignature);
+		int lRedKings = Tablebase.redKings(pSignature);
+		return cChoose[cManSquares][Tablebase.redMen(pSignature)]
+				* cChoose[cManSquares][Tablebase.whiteMen(pSignature)]
+				* cChoose[GameState.cSquares - lMen][lRedKings]
+				* cChoose[GameState.cSquares - lMen - lRedKings][Tablebase.whiteKings(pSignature)]
+				* 2;
+	} // End size
+
+	/**
+	 * The index of a position within its signature
+	 *
+	 * Each group of pieces (red men, white men, red kings, white kings) is
+	 * ranked as a combination of squares. Red men are ranked among the
+	 * first 28 squares and white men among the last 28, independently, so
+	 * some indices have men on top of each other and are not used. Kings
+	 * are ranked among the squares the earlier groups left empty. The lowest
+	 * bit is the player to move.
+	 */
+	static long index(int pRed, int pWhite, int pKings, int pNextPlayer) {
+		int lRedMen = pRed & ~pKings;
+		int lWhiteMen = pWhite & ~pKings;
+		int lRedKings = pRed & pKings;
+		int lWhiteKings = pWhite & pKings;
+
+		int lMen = Integer.bitCount(lRedMen | lWhiteMen);
+		int lFree = GameState.cSquares - lMen;
+		int lFreeAfterRed = lFree - Integer.bitCount(lRedKings);
+
+		long lIndex = Tablebase.rank(lRedMen);
+		lIndex = lIndex * cChoose[cManSquares][Integer.bitCount(lWhiteMen)]
+				+ Tablebase.rank(lWhiteMen >>> cWhiteManShift);
+		lIndex = lIndex * cChoose[lFree][Integer.bitCount(lRedKings)]
+				+ Tablebase.rank(Tablebase.compress(lRedKings, lRedMen | lWhiteMen));
+		lIndex = lIndex * cChoose[lFreeAfterRed][Integer.bitCount(lWhiteKings)]
+				+ Tablebase.rank(Tablebase.compress(lWhiteKings, lRedMen | lWhiteMen | lRedKings));
+		return lIndex * 2 + ((pNextPlayer == Constants.CELL_WHITE) ? 1 : 0);
+	} // End index
+
+	/**
+	 * The inverse of index()
+	 *
+	 * @param pMasks where the red, white and king masks and the player to
+	 *   move are written
+	 * @return false if the index is not used (men on top of each other)
+	 */
+	static boolean position(int pSignature, long pIndex, int[] pMasks) {
+		int lMen = Tablebase.redMen(pSignature) + Tablebase.whiteMen(pSignature);
+		int lFree = GameState.cSquares - lMen;
+		int lFreeAfterRed = lFree - Tablebase.redKings(pSignature);
+
+		int lNextPlayer = ((pIndex & 1) != 0) ? Constants.CELL_WHITE : Constants.CELL_RED;
+		long lIndex = pIndex >>> 1;
+
+		long lBase = cChoose[lFreeAfterRed][Tablebase.whiteKings(pSignature)];
+		int lWhiteKings = Tablebase.unrank(lIndex % lBase, Tablebase.whiteKings(pSignature));
+		lIndex /= lBase;
+
+		lBase = cChoose[lFree][Tablebase.redKings(pSignature)];
+		int lRedKings = Tablebase.unrank(lIndex % lBase, Tablebase.redKings(pSignature));
+		lIndex /= lBase;
+
+		lBase = cChoose[cManSquares][Tablebase.whiteMen(pSignature)];
+		int lWhiteMen = Tablebase.unrank(lIndex % lBase, Tablebase.whiteMen(pSignature)) << cWhiteManShift;
+		lIndex /= lBase;
+
+		int lRedMen = Tablebase.unrank(lIndex, Tablebase.redMen(pSignature));
+		if ((lRedMen & lWhiteMen) != 0) {
+			return false;
+		} // End if
+
+		lRedKings = Tablebase.expand(lRedKings, lRedMen | lWhiteMen);
+		lWhiteKings = Tablebase.expand(lWhiteKings, lRedMen | lWhiteMen | lRedKings);
+
+		pMasks[0] = lRedMen | lRedKings;
+		pMasks[1] = lWhiteMen | lWhiteKings;
+		pMasks[2] = lRedKings | lWhiteKings;
+		pMasks[3] = lNextPlayer;
+		return true;
+	} // End position
+
+	/**
+	 * @return the rank of a set of squares among all sets of the same size,
+	 *   in the combinatorial number system
+	 */
+	private static long rank(int pSquares) {
+		long lRank = 0;
+		int k = 1;
+		for (int lLeft = pSquares; lLeft != 0; lLeft &= lLeft - 1) {
+			lRank += cChoose[Integer.numberOfTrailingZeros(lLeft)][k++];
+		} // End for
+		return lRank;
+	} // End rank
+
+	/**
+	 * @return the set of pCount squares with rank pRank
+	 */
+	private static int unrank(long pRank, int pCount) {
+		int lSquares = 0;
+		long lRank = pRank;
+		for (int k = pCount; k > 0; k--) {
+			int lSquare = k - 1;
+			while (cChoose[lSquare + 1][k] <= lRank) {
+				lSquare++;
+			} // End while
+			lRank -= cChoose[lSquare][k];
+			lSquares |= 1 << lSquare;
+		} // End for
+		return lSquares;
+	} // End unrank
+
+	/**
+	 * @return pSquares numbered among the squares not in pOccupied
+	 */
+	private static int compress(int pSquares, int pOccupied) {
+		int lResult = 0;
+		for (int lLeft = pSquares; lLeft != 0; lLeft &= lLeft - 1) {
+			int lSquare = Integer.numberOfTrailingZeros(lLeft);
+			lResult |= 1 << (lSquare - Integer.bitCount(pOccupied & ((1 << lSquare) - 1)));
+		} // End for
+		return lResult;
+	} // End compress
+
+	/**
+	 * The inverse of compress()
+	 */
+	private static int expand(int pSquares, int pOccupied) {
+		int lResult = 0;
+		int lFree = 0;
+		for (int i = 0; i < GameState.cSquares && (pSquares >>> lFree) != 0; i++) {
+			if ((pOccupied & (1 << i)) == 0) {
+				if ((pSquares & (1 << lFree)) != 0) {
+					lResult |= 1 << i;
+				} // End if
+				lFree++;
+			} // End if
+		} // End for
+		return lResult;
+	} // End expand
+} // End class Tablebase
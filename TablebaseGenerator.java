@@ -0,0 +1,307 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds the endgame tablebase read by Tablebase
+ *
+ * Signatures are solved from the fewest pieces up, and for the same number
+ * of pieces from the fewest men up. Every move out of a signature is then
+ * a capture or a promotion into a signature that is already solved.
+ * Signatures that are looked up through their mirror are not solved at all.
+ *
+ * Within a signature the values are found by retrograde analysis, one
+ * distance at a time. Pass n finds the positions that are decided in
+ * exactly n plies: wins, which have a move to a position lost in n - 1
+ * plies, and losses, where every move leads to a position won in at most
+ * n - 1 plies. Moves are generated with the GameState rules, so the
+ * tablebase agrees with the game. Positions left when the passes stop
+ * finding anything are draws.
+ *
+ * A pass only reads values found by earlier passes, so its positions are
+ * split between threads.
+ *
+ * Usage:
+ *   java TablebaseGenerator <pieces> [threads <n>] [<file>]
+ *
+ * The default file is endgame.tb, which is where Player looks for it.
+ * A tablebase must fit in 2 GB, which allows up to 5 pieces.
+ */
+public class TablebaseGenerator {
+	/**
+	 * Ranges of indices with fewer positions than this are not split
+	 */
+	private static final int cSplitSize = 1 << 14;
+
+	private final byte[][] mValues = new byte[Tablebase.cSignatures][];
+	private int mMaxDistance;		// the longest distance in the solved signatures
+	private final ForkJoinPool mPool;
+
+	/**
+	 * @param pThreads the number of threads to solve with
+	 */
+	TablebaseGenerator(int pThreads) {
+		this.mPool = new ForkJoinPool(pThreads);
+	} // End constructor TablebaseGenerator
+
+	/**
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		// Parse parameters
+		int pieces = -1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String file = Player.cTablebaseFile;
+
+		for (int i = 0; i < args.length; ++i) {
+			String param = args[i];
+
+			if ((param.equals("threads") || param.equals("t")) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (pieces < 0 && param.matches("\\d+")) {
+				pieces = Integer.parseInt(param);
+			} else {
+				file = param;
+			}
+		}
+
+		if (pieces < 2) {
+			System.err.println("Usage: java TablebaseGenerator <pieces> [threads <n>] [<file>]");
+			return;
+		} // End if
+
+		// Tablebase maps the file as one buffer, and each signature is an array
+		List<Integer> signatures = TablebaseGenerator.signatures(pieces);
+		long size = TablebaseGenerator.fileSize(signatures);
+		if (size > Integer.MAX_VALUE) {
+			System.err.println("A tablebase of " + pieces + " pieces would take " + (size >> 20)
+					+ " MB, more than the " + (Integer.MAX_VALUE >> 20) + " MB a tablebase can have."
+					+ " Use fewer pieces.");
+			return;
+		} // End if
+		TablebaseGenerator generator = new TablebaseGenerator(threads);
+
+		long start = System.nanoTime();
+		for (int signature : signatures) {
+			generator.solve(signature);
+		} // End for
+		generator.write(file, pieces, signatures);
+
+		generator.mPool.shutdown();
+
+		System.err.println("Wrote " + signatures.size() + " signatures to " + file + " in "
+				+ ((System.nanoTime() - start) / 1000000) + " ms, " + threads + " threads");
+	} // End main
+
+	/**
+	 * @return all stored signatures with both colours on the board and at
+	 *   most pPieces pieces, in the order they must be solved
+	 */
+	static List<Integer> signatures(int pPieces) {
+		List<Integer> lResult = new ArrayList<Integer>();
+		for (int lPieces = 2; lPieces <= pPieces; lPieces++) {
+			for (int lMen = 0; lMen <= lPieces; lMen++) {
+				for (int lRedMen = 0; lRedMen <= lMen; lRedMen++) {
+					int lWhiteMen = lMen - lRedMen;
+					for (int lRedKings = 0; lRedKings <= lPieces - lMen; lRedKings++) {
+						int lWhiteKings = lPieces - lMen - lRedKings;
+						if (lRedMen + lRedKings == 0 || lWhiteMen + lWhiteKings == 0
+								|| lRedMen + lRedKings > GameState.cPlayerPieces
+								|| lWhiteMen + lWhiteKings > GameState.cPlayerPieces) {
+							continue;
+						} // End if
+						int lSignature = lRedMen | (lRedKings << 4) | (lWhiteMen << 8) | (lWhiteKings << 12);
+						if (Tablebase.isStored(lSignature)) {
+							lResult.add(lSignature);
+						} // End if
+					} // End for
+				} // End for
+			} // End for
+		} // End for
+		return lResult;
+	} // End signatures
+
+	/**
+	 * @return the size in bytes of the file write() makes of pSignatures
+	 */
+	static long fileSize(List<Integer> pSignatures) {
+		long lSize = 16 + 12L * pSignatures.size();
+		for (int lSignature : pSignatures) {
+			lSize += Tablebase.size(lSignature);
+		} // End for
+		return lSize;
+	} // End fileSize
+
+	/**
+	 * Finds the values of all positions of a signature. The signatures its
+	 * moves lead to must already be solved.
+	 */
+	void solve(int pSignature) {
+		long lStart = System.nanoTime();
+		long lSize = Tablebase.size(pSignature);
+		if (lSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(TablebaseGenerator.name(pSignature) + " has " + lSize
+					+ " positions, too many for an array");
+		} // End if
+		byte[] lValues = new byte[(int) lSize];
+		this.mValues[pSignature] = lValues;
+
+		int lDistance = 0;
+		for (int n = 0; n <= Tablebase.cMaxDistance; n++) {
+			int lFound = this.mPool.invoke(new Pass(pSignature, n, 0, lValues.length));
+
+			if (lFound > 0) {
+				lDistance = n;
+			} else if (n > this.mMaxDistance) {
+				// Only moves to other signatures could still decide a
+				// position, and they are all shorter than this
+				break;
+			} // End else
+		} // End for
+		this.mMaxDistance = Math.max(this.mMaxDistance, lDistance);
+
+		System.err.println(TablebaseGenerator.name(pSignature) + ": " + lValues.length
+				+ " indices, longest win " + lDistance + " plies, "
+				+ ((System.nanoTime() - lStart) / 1000000) + " ms");
+	} // End solve
+
+	/**
+	 * One pass over a range of indices of a signature
+	 */
+	private class Pass extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final int mSignature;
+		private final int mDistance;
+		private final int mFrom;
+		private final int mTo;
+
+		/**
+		 * @param pSignature the signature being solved
+		 * @param pDistance the distance of the positions this pass finds
+		 * @param pFrom the first index of the range
+		 * @param pTo one past the last index of the range
+		 */
+		Pass(int pSignature, int pDistance, int pFrom, int pTo) {
+			this.mSignature = pSignature;
+			this.mDistance = pDistance;
+			this.mFrom = pFrom;
+			this.mTo = pTo;
+		} // End constructor Pass
+
+		/**
+		 * @return the number of positions decided
+		 */
+		@Override
+		protected Integer compute() {
+			if (this.mTo - this.mFrom > cSplitSize) {
+				int lMiddle = (this.mFrom + this.mTo) >>> 1;
+				Pass lLow = new Pass(this.mSignature, this.mDistance, this.mFrom, lMiddle);
+				Pass lHigh = new Pass(this.mSignature, this.mDistance, lMiddle, this.mTo);
+				invokeAll(lLow, lHigh);
+				return lLow.join() + lHigh.join();
+			} // End if
+
+			byte[] lValues = TablebaseGenerator.this.mValues[this.mSignature];
+			GameState lState = new GameState();
+			long[] lMoves = new long[GameState.cMaxMoves];
+			int[] lMasks = new int[4];
+			int lFound = 0;
+
+			for (int i = this.mFrom; i < this.mTo; i++) {
+				if (lValues[i] == 0 && Tablebase.position(this.mSignature, i, lMasks)) {
+					lState.setPosition(lMasks[0], lMasks[1], lMasks[2], lMasks[3]);
+					lValues[i] = this.resolve(lState, lMoves);
+					if (lValues[i] != 0) {
+						lFound++;
+					} // End if
+				} // End if
+			} // End for
+			return lFound;
+		} // End compute
+
+		/**
+		 * @return the value of pState if it is decided in exactly
+		 *   mDistance plies, or 0
+		 */
+		private byte resolve(GameState pState, long[] pMoves) {
+			int lCount = pState.findPossibleMoves(pMoves);
+
+			// No moves: the player to move has lost
+			if (lCount == 1 && Move.packedType(pMoves[0]) < Move.MoveType.MOVE_NORMAL.getInternalValue()) {
+				return -1;
+			} // End if
+
+			boolean lAllWon = true;
+			for (int i = 0; i < lCount; i++) {
+				pState.doMove(pMoves[i]);
+				int lValue = TablebaseGenerator.this.lookup(pState);
+				pState.undoMove();
+
+				if (lValue < 0 && Tablebase.distance(lValue) < this.mDistance) {
+					return (byte) (this.mDistance + 1);
+				} // End if
+				if (lValue <= 0 || Tablebase.distance(lValue) >= this.mDistance) {
+					lAllWon = false;
+				} // End if
+			} // End for
+			return lAllWon ? (byte) -(this.mDistance + 1) : 0;
+		} // End resolve
+	} // End class Pass
+
+	/**
+	 * @return the value known so far of a position reached by a move
+	 */
+	private int lookup(GameState pState) {
+		int lRed = pState.getRed();
+		int lWhite = pState.getWhite();
+
+		// The last piece of the player to move was captured
+		if (((pState.getNextPlayer() == Constants.CELL_RED) ? lRed : lWhite) == 0) {
+			return -1;
+		} // End if
+
+		long lLocation = Tablebase.locate(lRed, lWhite, pState.getKings(), pState.getNextPlayer());
+		byte[] lValues = this.mValues[Tablebase.locatedSignature(lLocation)];
+		return lValues[(int) Tablebase.locatedIndex(lLocation)];
+	} // End lookup
+
+	/**
+	 * Writes the solved signatures in the format described in Tablebase
+	 */
+	void write(String pFile, int pPieces, List<Integer> pSignatures) throws IOException {
+		try (DataOutputStream lOut = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(pFile), 1 << 16))) {
+			lOut.writeInt(Tablebase.cMagic);
+			lOut.writeInt(Tablebase.cVersion);
+			lOut.writeInt(pPieces);
+			lOut.writeInt(pSignatures.size());
+
+			long lOffset = 16 + 12L * pSignatures.size();
+			for (int lSignature : pSignatures) {
+				lOut.writeInt(lSignature);
+				lOut.writeLong(lOffset);
+				lOffset += this.mValues[lSignature].length;
+			} // End for
+
+			for (int lSignature : pSignatures) {
+				lOut.write(this.mValues[lSignature]);
+			} // End for
+		} // End try
+	} // End write
+
+	/**
+	 * @return a signature as text, like "2m1k-1m0k" for two red men and a
+	 *   red king against a white man
+	 */
+	static String name(int pSignature) {
+		return Tablebase.redMen(pSignature) + "m" + Tablebase.redKings(pSignature) + "k-"
+				+ Tablebase.whiteMen(pSignature) + "m" + Tablebase.whiteKings(pSignature) + "k";
+	} // End name
+} // End class TablebaseGenerator
@@ -0,0 +1,56 @@
+/**
+ * Decides how much of the time before a deadline to spend on a move
+ *
+ * The referee's deadline becomes the hard limit, less a safety margin for
+ * sending the move. The soft limit, after which the search doesn't start
+ * another iteration, is a share of the time left that grows with:
+ * - the number of legal moves: with few choices there is little to find
+ * - how far the draw counter has run down: near the end of the counter
+ *   the game is decided, and mistakes can't be made up for
+ */
+public class TimeManager {
+	/**
+	 * Part of the time left that is kept for sending the move, and at least
+	 * cMinMarginNanos of it
+	 */
+	private static final double cMarginShare = 0.1;
+	private static final long cMinMarginNanos = 5000000;
+
+	/**
+	 * Part of the time to the hard limit spent on a position of average
+	 * complexity, and the most that is ever spent before the soft limit
+	 */
+	private static final double cBaseShare = 0.5;
+	private static final double cMaxShare = 0.85;
+
+	/**
+	 * Positions with this many legal moves get the base share
+	 */
+	private static final int cAverageMoves = 8;
+
+	/**
+	 * Sets the limits of a search
+	 *
+	 * @param pState the position to be searched
+	 * @param pMoves the number of legal moves in pState
+	 * @param pDeadline the deadline given by the referee
+	 * @return the deadline to search with
+	 */
+	public Deadline allocate(GameState pState, int pMoves, Deadline pDeadline) {
+		long lNow = System.nanoTime();
+		long lLeft = Math.max(pDeadline.nanosUntil(), 0);
+		long lHard = lNow + lLeft - Math.max((long) (lLeft * cMarginShare), cMinMarginNanos);
+
+		// From 0.5 with 2 moves to 1.5 with 14 or more
+		double lComplexity = 0.5 + 0.5 * (pMoves - 2) / (cAverageMoves - 2);
+		lComplexity = Math.max(0.5, Math.min(lComplexity, 1.5));
+
+		// From 1 with a full draw counter to 1.5 when it runs out. Messages
+		// may carry counters above the full one, which count as full.
+		int lUntilDraw = Math.max(0, Math.min(pState.getMovesUntilDraw(), GameState.cMovesUntilDraw));
+		double lUrgency = 1.5 - 0.5 * lUntilDraw / GameState.cMovesUntilDraw;
+
+		double lShare = Math.min(cBaseShare * lComplexity * lUrgency, cMaxShare);
+		return new Deadline(lNow + (long) ((lHard - lNow) * lShare), lHard);
+	} // End allocate
+} // End class TimeManager
@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results, keyed by GameState.getKey()
+ *
+ * The table is made of buckets of two entries. The first entry of a bucket
+ * keeps the deepest result (it is only replaced by a search at least as
+ * deep, or by one from a newer search), the second one is always replaced.
+ *
+ * Entries live in one preallocated long array, three longs each: a check
+ * word, the data word and the best move. The check word is the XOR of the
+ * key with the other two, so several threads can read and write the table
+ * without locks: an entry that was half written by another thread fails the
+ * check and is simply treated as a miss.
+ *
+ * The data word packs the score (16 bits), the depth (8 bits), the bound
+ * type (2 bits) and the age of the search that stored it (8 bits). Use
+ * score(), depth() and bound() to read it.
+ */
+public class TranspositionTable {
+	/**
+	 * Bound types. A data word is never 0, so 0 can mean "no entry".
+	 */
+	public static final int cExact = 1;	// the score is exact
+	public static final int cLower = 2;	// the score is a lower bound (fail high)
+	public static final int cUpper = 3;	// the score is an upper bound (fail low)
+
+	/**
+	 * The best move of entries that don't have one. Packed 0 would be the
+	 * impossible move 1-1.
+	 */
+	public static final long cNoMove = 0;
+
+	private static final int cEntryLongs = 3;
+	private static final int cBucketEntries = 2;
+
+	private static final int cDepthShift = 16;
+	private static final int cBoundShift = 24;
+	private static final int cAgeShift = 26;
+
+	private final long[] mData;
+	private final int mBucketMask;
+	private int mAge;
+
+	/**
+	 * @param pMB the size of the table in megabytes. The number of entries
+	 *   is rounded down to a power of two.
+	 */
+	public TranspositionTable(int pMB) {
+		long lBuckets = ((long) pMB << 20) / (8 * cEntryLongs * cBucketEntries);
+		lBuckets = Long.highestOneBit(Math.max(lBuckets, 1));
+		lBuckets = Math.min(lBuckets, 1 << 24);
+
+		this.mData = new long[(int) lBuckets * cBucketEntries * cEntryLongs];
+		this.mBucketMask = (int) lBuckets - 1;
+	} // End constructor TranspositionTable
+
+	/**
+	 * Removes all entries
+	 */
+	public void clear() {
+		Arrays.fill(this.mData, 0);
+		this.mAge = 0;
+	} // End clear
+
+	/**
+	 * Marks the start of a new search, so that entries from earlier
+	 * searches are replaced first
+	 */
+	public void newSearch() {
+		this.mAge = (this.mAge + 1) & 0xFF;
+	} // End newSearch
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return this.mData.length / cEntryLongs;
+	} // End size
+
+	/**
+	 * @return the index in mData of the first entry of the bucket for pKey
+	 */
+	private int bucket(long pKey) {
+		return ((int) (pKey >>> 32) & this.mBucketMask) * cBucketEntries * cEntryLongs;
+	} // End bucket
+
+	/**
+	 * Looks up a position
+	 *
+	 * @param pKey the key of the position
+	 * @param pResult where the data word (index 0) and the best move
+	 *   (index 1) are written if the position is found
+	 * @return true if the position was found
+	 */
+	public boolean probe(long pKey, long[] pResult) {
+		int lBucket = this.bucket(pKey);
+
+		for (int i = lBucket; i < lBucket + cBucketEntries * cEntryLongs; i += cEntryLongs) {
+			long lData = this.mData[i + 1];
+			long lMove = this.mData[i + 2];
+			if ((this.mData[i] ^ lData ^ lMove) == pKey && lData != 0) {
+				pResult[0] = lData;
+				pResult[1] = lMove;
+				return true;
+			} // End if
+		} // End for
+		return false;
+	} // End probe
+
+	/**
+	 * Stores the result of a search
+	 *
+	 * @param pKey the key of the position
+	 * @param pDepth the depth searched, 0 to 255
+	 * @param pBound cExact, cLower or cUpper
+	 * @param pScore the score, which must fit in 16 bits
+	 * @param pMove the best move in packed form, or cNoMove
+	 */
+	public void store(long pKey, int pDepth, int pBound, int pScore, long pMove) {
+		assert(pDepth >= 0 && pDepth < 256);
+		assert(pScore >= Short.MIN_VALUE && pScore <= Short.MAX_VALUE);
+
+		int lBucket = this.bucket(pKey);
+		int lDeep = lBucket;
+		int lAlways = lBucket + cEntryLongs;
+
+		long lDeepData = this.mData[lDeep + 1];
+		long lDeepMove = this.mData[lDeep + 2];
+		boolean lDeepMatches = (this.mData[lDeep] ^ lDeepData ^ lDeepMove) == pKey;
+
+		// Use the depth-preferred entry if it holds this position, is not
+		// deeper, or is left over from an earlier search
+		int lEntry = lAlways;
+		if (lDeepMatches || lDeepData == 0
+				|| TranspositionTable.depth(lDeepData) <= pDepth
+				|| (int) (lDeepData >>> cAgeShift) != this.mAge) {
+			lEntry = lDeep;
+		} // End if
+
+		// Don't lose the best move of a previous search of this position
+		long lMove = pMove;
+		if (lMove == cNoMove) {
+			long lOldData = this.mData[lEntry + 1];
+			long lOldMove = this.mData[lEntry + 2];
+			if ((this.mData[lEntry] ^ lOldData ^ lOldMove) == pKey) {
+				lMove = lOldMove;
+			} // End if
+		} // End if
+
+		long lData = (pScore & 0xFFFFL)
+				| ((long) pDepth << cDepthShift)
+				| ((long) pBound << cBoundShift)
+				| ((long) this.mAge << cAgeShift);
+
+		this.mData[lEntry] = pKey ^ lData ^ lMove;
+		this.mData[lEntry + 1] = lData;
+		this.mData[lEntry + 2] = lMove;
+	} // End store
+
+	/**
+	 * @return the score of a data word returned by probe()
+	 */
+	public static int score(long pData) {
+		return (short) pData;
+	} // End score
+
+	/**
+	 * @return the depth of a data word returned by probe()
+	 */
+	public static int depth(long pData) {
+		return (int) (pData >>> cDepthShift) & 0xFF;
+	} // End depth
+
+	/**
+	 * @return the bound type of a data word returned by probe()
+	 */
+	public static int bound(long pData) {
+		return (int) (pData >>> cBoundShift) & 3;
+	} // End bound
+} // End class TranspositionTable